@@ -0,0 +1,11 @@
+package com.BehaviorPattern.CommandPattern;
+
+/**
+ * Command that sets the whole state of its receiver, so of several such
+ * commands for the same receiver only the last one has to be executed.
+ *
+ * @author nitin
+ *
+ */
+interface CoalescingCommand extends ReceiverCommand {
+}
@@ -0,0 +1,11 @@
+package com.BehaviorPattern.CommandPattern;
+
+/**
+ * Runs commands asynchronously, for an invoker that should not wait for them.
+ *
+ * @author nitin
+ *
+ */
+interface CommandExecutor {
+	void submit(Command command);
+}
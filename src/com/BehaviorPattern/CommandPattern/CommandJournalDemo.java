@@ -0,0 +1,572 @@
+package com.BehaviorPattern.CommandPattern;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.ConcurrencyPattern.AsyncOutput;
+import com.ConcurrencyPattern.OutputSink;
+
+/**
+ * Numbered lights with one cached {@link LightOnCommand} and
+ * {@link LightOffCommand} each, so a command can be written as a single int:
+ * <code>light * 2 + (on ? 1 : 0) + 1</code>. 0 is never a valid code, it marks
+ * the unwritten end of a journal. The state of the fleet is a bit set, one bit
+ * per light.
+ *
+ * @author nitin
+ *
+ */
+class LightFleet {
+
+	private final Light[] lights;
+	private final Command[] on;
+	private final Command[] off;
+	private final Map<Command, Integer> codes = new IdentityHashMap<>();
+
+	public LightFleet(int size) {
+		lights = new Light[size];
+		on = new Command[size];
+		off = new Command[size];
+		for (int i = 0; i < size; i++) {
+			lights[i] = new Light();
+			on[i] = new LightOnCommand(lights[i]);
+			off[i] = new LightOffCommand(lights[i]);
+			codes.put(on[i], i * 2 + 2);
+			codes.put(off[i], i * 2 + 1);
+		}
+	}
+
+	public int size() {
+		return lights.length;
+	}
+
+	public Command on(int light) {
+		return on[light];
+	}
+
+	public Command off(int light) {
+		return off[light];
+	}
+
+	int encode(Command command) {
+		Integer code = codes.get(command);
+		if (code == null) {
+			throw new IllegalArgumentException("Not a command of this fleet: " + command);
+		}
+		return code;
+	}
+
+	/** Applies the command with <code>code</code> to a state bit set. */
+	static void apply(long[] state, int code) {
+		int light = (code - 1) >>> 1;
+		if ((code - 1 & 1) != 0) {
+			state[light >>> 6] |= 1L << light;
+		} else {
+			state[light >>> 6] &= ~(1L << light);
+		}
+	}
+
+	long[] captureState() {
+		long[] state = new long[(lights.length + 63) >>> 6];
+		for (int i = 0; i < lights.length; i++) {
+			if (lights[i].isOn()) {
+				state[i >>> 6] |= 1L << i;
+			}
+		}
+		return state;
+	}
+
+	void restore(long[] state) {
+		for (int i = 0; i < lights.length; i++) {
+			lights[i].restore((state[i >>> 6] & 1L << i) != 0);
+		}
+	}
+}
+
+/**
+ * Write-ahead journal of command codes, 4 little-endian bytes each, in files
+ * named after the sequence number of their first command
+ * (<code>journal-00000000000000000000.log</code>).
+ *
+ * Appending only copies the code into memory. {@link #sync(long)} makes it
+ * durable with group commit: one caller at a time writes everything appended
+ * so far and forces it once, the callers arriving meanwhile wait for that
+ * write or take the next batch together, so there is one
+ * <code>force()</code> per batch instead of one per command.
+ */
+class CommandJournal implements Closeable {
+
+	static final String PREFIX = "journal-";
+	static final String SUFFIX = ".log";
+	private static final boolean WINDOWS = System.getProperty("os.name").startsWith("Windows");
+
+	private final Path directory;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+	private FileChannel channel;
+	private int[] pending = new int[1024];
+	private int[] spare = new int[1024];
+	private int pendingCount;
+	private long next;
+	private long durable;
+	private boolean flushing;
+	private long forces;
+	private IOException failure;
+
+	/** Continues the journal at sequence <code>next</code>, dropping anything after it. */
+	public CommandJournal(Path directory, long next) throws IOException {
+		this.directory = directory;
+		this.next = next;
+		this.durable = next;
+		Map.Entry<Long, Path> last = files(directory).floorEntry(next);
+		if (last == null) {
+			channel = create(next);
+		} else {
+			channel = FileChannel.open(last.getValue(), StandardOpenOption.WRITE);
+			// cut off a torn or unrecovered tail
+			channel.truncate((next - last.getKey()) * 4);
+			channel.position((next - last.getKey()) * 4);
+		}
+	}
+
+	static TreeMap<Long, Path> files(Path directory) throws IOException {
+		TreeMap<Long, Path> files = new TreeMap<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path file : stream) {
+				String name = file.getFileName().toString();
+				files.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+			}
+		}
+		return files;
+	}
+
+	private FileChannel create(long base) throws IOException {
+		FileChannel created = FileChannel.open(directory.resolve(String.format("%s%020d%s", PREFIX, base, SUFFIX)),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		// the new file must survive a crash before anything it replaces is deleted
+		forceDirectory(directory);
+		return created;
+	}
+
+	/**
+	 * Makes files created, renamed or deleted in <code>directory</code> durable.
+	 * Windows cannot open a directory for this, there it is skipped.
+	 */
+	static void forceDirectory(Path directory) throws IOException {
+		if (WINDOWS) {
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+
+	/** @return the sequence number of the command */
+	public synchronized long append(int code) throws IOException {
+		if (failure != null) {
+			throw new IOException("Journal failed", failure);
+		}
+		if (pendingCount == pending.length) {
+			pending = Arrays.copyOf(pending, pending.length * 2);
+		}
+		pending[pendingCount++] = code;
+		return next++;
+	}
+
+	/** Waits until the command with <code>sequence</code> and all before it are on disk. */
+	public void sync(long sequence) throws IOException {
+		while (true) {
+			int[] batch;
+			int count;
+			long end;
+			synchronized (this) {
+				while (durable <= sequence && flushing && failure == null) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted waiting for the journal", e);
+					}
+				}
+				if (failure != null) {
+					throw new IOException("Journal failed", failure);
+				}
+				if (durable > sequence) {
+					return;
+				}
+				flushing = true;
+				batch = pending;
+				count = pendingCount;
+				end = next;
+				pending = spare;
+				pendingCount = 0;
+			}
+			IOException error = null;
+			try {
+				write(batch, count);
+				channel.force(false);
+			} catch (IOException e) {
+				error = e;
+			}
+			synchronized (this) {
+				spare = batch;
+				flushing = false;
+				if (error == null) {
+					durable = end;
+					forces++;
+				} else {
+					failure = error;
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	private void write(int[] batch, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			if (!buffer.hasRemaining()) {
+				drain();
+			}
+			buffer.putInt(batch[i]);
+		}
+		drain();
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Starts a new file at the next sequence number. Everything appended must be
+	 * durable and nothing may be appended concurrently.
+	 */
+	synchronized void roll() throws IOException {
+		if (durable != next) {
+			throw new IllegalStateException("Journal has unsynced commands");
+		}
+		channel.close();
+		channel = create(next);
+	}
+
+	public synchronized long getNextSequence() {
+		return next;
+	}
+
+	public synchronized long getForceCount() {
+		return forces;
+	}
+
+	@Override
+	public void close() throws IOException {
+		sync(getNextSequence() - 1);
+		channel.close();
+	}
+}
+
+/**
+ * Event-sourced {@link LightFleet}: every command is journaled and executed in
+ * journal order, and the state survives a restart.
+ *
+ * {@link #execute(Command)} appends and executes the command under the
+ * store's lock and returns once the command is durable. The in-memory effect
+ * may precede the <code>force()</code>, but no caller is told before, and a
+ * crash loses the memory anyway. Every <code>snapshotEvery</code> commands the
+ * state is written to a compact snapshot (a header and one bit per light), the
+ * journal rolls over and the files made redundant by the snapshot are
+ * deleted. Opening the store loads the latest snapshot and replays only the
+ * journal after it, mapped, straight into the state bit set, without running
+ * the commands.
+ */
+class CommandStore implements Closeable {
+
+	private static final int SNAPSHOT_MAGIC = 0x534e4150; // "SNAP"
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final int SNAPSHOT_HEADER = 24;
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final long REPLAY_WINDOW = 1L << 28;
+
+	private final Path directory;
+	private final LightFleet fleet;
+	private final long snapshotEvery;
+	private final CommandJournal journal;
+	private final long snapshotSequence;
+	private final long replayed;
+	private long lastSnapshot;
+
+	public CommandStore(Path directory, LightFleet fleet, long snapshotEvery) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.fleet = fleet;
+		this.snapshotEvery = snapshotEvery;
+
+		long[] state = new long[(fleet.size() + 63) >>> 6];
+		Map.Entry<Long, Path> snapshot = snapshots().lastEntry();
+		long sequence = snapshot == null ? 0 : readSnapshot(snapshot.getValue(), state);
+		this.snapshotSequence = sequence;
+		this.lastSnapshot = sequence;
+		long next = replay(sequence, state);
+		this.replayed = next - sequence;
+		fleet.restore(state);
+		this.journal = new CommandJournal(directory, next);
+	}
+
+	private TreeMap<Long, Path> snapshots() throws IOException {
+		TreeMap<Long, Path> snapshots = new TreeMap<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*.bin")) {
+			for (Path file : stream) {
+				String name = file.getFileName().toString();
+				snapshots.put(Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - 4)), file);
+			}
+		}
+		return snapshots;
+	}
+
+	private long readSnapshot(Path file, long[] state) throws IOException {
+		try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer bytes = ByteBuffer.allocate((int) in.size()).order(ByteOrder.LITTLE_ENDIAN);
+			while (bytes.hasRemaining() && in.read(bytes) >= 0) {
+			}
+			bytes.flip();
+			if (bytes.remaining() != SNAPSHOT_HEADER + state.length * 8 || bytes.getInt() != SNAPSHOT_MAGIC
+					|| bytes.getInt() != SNAPSHOT_VERSION) {
+				throw new IOException("Not a version " + SNAPSHOT_VERSION + " snapshot of this fleet: " + file);
+			}
+			long sequence = bytes.getLong();
+			bytes.getLong(); // light count and padding
+			bytes.asLongBuffer().get(state);
+			return sequence;
+		}
+	}
+
+	// applies the journaled commands from sequence on to state, returns the next sequence
+	private long replay(long sequence, long[] state) throws IOException {
+		long next = sequence;
+		for (Map.Entry<Long, Path> file : CommandJournal.files(directory).entrySet()) {
+			long base = file.getKey();
+			if (base > next) {
+				throw new IOException("Journal is missing the commands from " + next + " to " + base);
+			}
+			try (FileChannel in = FileChannel.open(file.getValue(), StandardOpenOption.READ)) {
+				long records = in.size() / 4;
+				if (base + records <= next) {
+					continue;
+				}
+				for (long first = next - base; first < records; first += REPLAY_WINDOW / 4) {
+					long count = Math.min(REPLAY_WINDOW / 4, records - first);
+					MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, first * 4, count * 4);
+					window.order(ByteOrder.LITTLE_ENDIAN);
+					for (int i = 0; i < count; i++) {
+						int code = window.getInt(i * 4);
+						if (code == 0) {
+							// torn tail, the commands after it were never acknowledged
+							return next;
+						}
+						LightFleet.apply(state, code);
+						next++;
+					}
+				}
+			}
+		}
+		return next;
+	}
+
+	/** Journals and executes the command without waiting for the disk. */
+	public synchronized long submit(Command command) throws IOException {
+		long sequence = journal.append(fleet.encode(command));
+		command.execute();
+		if (sequence + 1 - lastSnapshot >= snapshotEvery) {
+			snapshot();
+		}
+		return sequence;
+	}
+
+	/** Journals and executes the command, and returns once it is durable. */
+	public void execute(Command command) throws IOException {
+		journal.sync(submit(command));
+	}
+
+	public void sync(long sequence) throws IOException {
+		journal.sync(sequence);
+	}
+
+	/** Writes a snapshot of the current state and deletes what it makes redundant. */
+	public synchronized void snapshot() throws IOException {
+		long sequence = journal.getNextSequence();
+		journal.sync(sequence - 1);
+		journal.roll();
+
+		long[] state = fleet.captureState();
+		ByteBuffer bytes = ByteBuffer.allocate(SNAPSHOT_HEADER + state.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+		bytes.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(sequence).putInt(fleet.size()).putInt(0);
+		bytes.asLongBuffer().put(state);
+		// the view does not move the position, the header is still to be written
+		bytes.rewind();
+		Path temporary = directory.resolve(SNAPSHOT_PREFIX + "new.tmp");
+		try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (bytes.hasRemaining()) {
+				out.write(bytes);
+			}
+			out.force(true);
+		}
+		Files.move(temporary, directory.resolve(String.format("%s%020d.bin", SNAPSHOT_PREFIX, sequence)),
+				StandardCopyOption.ATOMIC_MOVE);
+		// otherwise a crash could keep the deletions below but lose the rename
+		CommandJournal.forceDirectory(directory);
+		lastSnapshot = sequence;
+
+		for (Map.Entry<Long, Path> old : snapshots().headMap(sequence).entrySet()) {
+			Files.delete(old.getValue());
+		}
+		for (Map.Entry<Long, Path> old : CommandJournal.files(directory).headMap(sequence).entrySet()) {
+			Files.delete(old.getValue());
+		}
+	}
+
+	/** Sequence number of the snapshot the state was recovered from. */
+	public long getSnapshotSequence() {
+		return snapshotSequence;
+	}
+
+	/** Number of journaled commands replayed on top of the snapshot. */
+	public long getReplayedCount() {
+		return replayed;
+	}
+
+	public long getNextSequence() {
+		return journal.getNextSequence();
+	}
+
+	public long getForceCount() {
+		return journal.getForceCount();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		journal.close();
+	}
+}
+
+/**
+ * Journals commands for a fleet of lights, from many threads waiting for every
+ * command and as a bulk load of 100 million commands (or the number given as
+ * first argument), then measures recovery: replaying the whole journal, and
+ * loading a snapshot plus a short journal tail. The recovered state is
+ * compared with the state computed from the same random commands.
+ */
+public class CommandJournalDemo {
+
+	private static final int LIGHTS = 1 << 20;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		long commands = args.length > 0 ? Long.parseLong(args[0]) : 100_000_000L;
+		Path directory = Files.createTempDirectory("journal");
+		long[] expected = new long[LIGHTS >>> 6];
+		Random random = new Random(22);
+		// the lights print every switch, the demo measures the journal
+		OutputSink stdout = AsyncOutput.DEFAULT.redirect(OutputSink.discard());
+		try {
+			LightFleet fleet = new LightFleet(LIGHTS);
+			try (CommandStore store = new CommandStore(directory, fleet, Long.MAX_VALUE)) {
+				int threads = 8;
+				int perThread = 20_000;
+				Thread[] workers = new Thread[threads];
+				long start = System.nanoTime();
+				for (int t = 0; t < threads; t++) {
+					int first = t * perThread;
+					workers[t] = new Thread(() -> {
+						try {
+							for (int i = first; i < first + perThread; i++) {
+								// a light of its own per thread, so the expected state is known
+								store.execute(fleet.on(i));
+							}
+						} catch (IOException e) {
+							throw new IllegalStateException(e);
+						}
+					});
+					workers[t].start();
+				}
+				for (Thread worker : workers) {
+					worker.join();
+				}
+				long elapsed = System.nanoTime() - start;
+				for (int i = 0; i < threads * perThread; i++) {
+					LightFleet.apply(expected, i * 2 + 2);
+				}
+				System.out.printf("%d threads, durable execute: %,.0f commands/s, %.1f commands per force()%n", threads,
+						threads * perThread * 1e9 / elapsed, (double) threads * perThread / store.getForceCount());
+
+				start = System.nanoTime();
+				load(store, fleet, random, expected, commands);
+				elapsed = System.nanoTime() - start;
+				System.out.printf("bulk load: %,d commands in %,d ms (%,.0f commands/s)%n", commands, elapsed / 1_000_000,
+						commands * 1e9 / elapsed);
+			}
+
+			LightFleet recovered = new LightFleet(LIGHTS);
+			long start = System.nanoTime();
+			try (CommandStore store = new CommandStore(directory, recovered, 10_000_000)) {
+				long elapsed = System.nanoTime() - start;
+				System.out.printf("recovery without snapshot: replayed %,d commands in %,d ms, state %s%n",
+						store.getReplayedCount(), elapsed / 1_000_000, verdict(recovered, expected));
+				store.snapshot();
+				load(store, recovered, random, expected, 1_000_000);
+			}
+
+			recovered = new LightFleet(LIGHTS);
+			start = System.nanoTime();
+			try (CommandStore store = new CommandStore(directory, recovered, 10_000_000)) {
+				long elapsed = System.nanoTime() - start;
+				System.out.printf("recovery from snapshot at %,d: replayed %,d commands in %,d ms, state %s%n",
+						store.getSnapshotSequence(), store.getReplayedCount(), elapsed / 1_000_000,
+						verdict(recovered, expected));
+			}
+		} finally {
+			AsyncOutput.DEFAULT.redirect(stdout);
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+				for (Path file : files) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(directory);
+		}
+	}
+
+	// random on/off commands, synced every million as a batch importer would
+	private static void load(CommandStore store, LightFleet fleet, Random random, long[] expected, long commands)
+			throws IOException {
+		long last = -1;
+		for (long i = 0; i < commands; i++) {
+			int light = random.nextInt(LIGHTS);
+			boolean on = random.nextBoolean();
+			last = store.submit(on ? fleet.on(light) : fleet.off(light));
+			LightFleet.apply(expected, light * 2 + (on ? 2 : 1));
+			if (i % 1_000_000 == 999_999) {
+				store.sync(last);
+			}
+		}
+		if (last >= 0) {
+			store.sync(last);
+		}
+	}
+
+	private static String verdict(LightFleet fleet, long[] expected) {
+		return Arrays.equals(fleet.captureState(), expected) ? "ok" : "WRONG";
+	}
+}
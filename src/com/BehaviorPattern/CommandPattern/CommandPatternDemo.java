@@ -1,5 +1,7 @@
 package com.BehaviorPattern.CommandPattern;
 
+import com.ConcurrencyPattern.AsyncOutput;
+
 /**
  * One example of the command pattern being executed in the real world is the
  * idea of a table order at a restaurant: the waiter takes the order, which is a
@@ -30,19 +32,28 @@ class Light {
 	private boolean on;
 
 	public void switchOn() {
-		System.out.println("Light is on"); 
+		AsyncOutput.DEFAULT.line().append("Light is on").println();
 		on = true;
 	}
 
 	public void switchOff() {
-		System.out.println("Light is off"); 
+		AsyncOutput.DEFAULT.line().append("Light is off").println();
 		on = false;
 	}
 
+	public boolean isOn() {
+		return on;
+	}
+
+	/** Sets the state without switching, when it is rebuilt after a restart. */
+	void restore(boolean on) {
+		this.on = on;
+	}
+
 }
 
 // Concrete Command
-class LightOnCommand implements Command {
+class LightOnCommand implements CoalescingCommand {
 	// reference to the light
 	Light light;
 
@@ -54,10 +65,14 @@ class LightOnCommand implements Command {
 		light.switchOn();
 	}
 
+	public Object getReceiver() {
+		return light;
+	}
+
 }
 
 // Concrete Command
-class LightOffCommand implements Command {
+class LightOffCommand implements CoalescingCommand {
 	// reference to the light
 	Light light;
 
@@ -68,18 +83,36 @@ class LightOffCommand implements Command {
 	public void execute() {
 		light.switchOff();
 	}
+
+	public Object getReceiver() {
+		return light;
+	}
 }
 
 // Invoker
 class RemoteControl {
 	private Command command;
+	private final CommandExecutor executor;
+
+	public RemoteControl() {
+		this(null);
+	}
+
+	/** Hands the commands to <code>executor</code> instead of running them. */
+	public RemoteControl(CommandExecutor executor) {
+		this.executor = executor;
+	}
 
 	public void setCommand(Command command) {
 		this.command = command;
 	}
 
 	public void pressButton() {
-		command.execute();
+		if (executor != null) {
+			executor.submit(command);
+		} else {
+			command.execute();
+		}
 	}
 }
 
@@ -0,0 +1,316 @@
+package com.BehaviorPattern.CommandPattern;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.ConcurrencyPattern.AsyncOutput;
+import com.ConcurrencyPattern.OutputSink;
+
+/**
+ * Executes commands on a dedicated thread, in the order they were submitted.
+ *
+ * Producers publish into a pre-allocated ring of command slots without
+ * locking: a slot is claimed with <code>getAndIncrement</code> and published
+ * with its sequence number, like the lines of {@link AsyncOutput}. The
+ * consumer takes up to <code>batchSize</code> published commands at a time and
+ * coalesces them before running them: of several {@link CoalescingCommand}s
+ * for the same receiver only the last one is executed, so a
+ * {@link LightOnCommand} followed by a {@link LightOffCommand} for the same
+ * light becomes a single switch off. Any other command is a barrier, commands
+ * before it are never coalesced with commands after it.
+ *
+ * A command that throws is counted and skipped, the consumer keeps going.
+ * Every command whose submit returned normally is run (or coalesced) before
+ * close() returns; a submit that races with close() or finds the consumer
+ * gone throws IllegalStateException instead.
+ *
+ * @author nitin
+ *
+ */
+class CoalescingCommandExecutor implements CommandExecutor, AutoCloseable {
+
+	// added to claimed by close(), a claim that carries it is refused
+	private static final long CLOSED = 1L << 62;
+
+	private final int mask;
+	private final Command[] slots;
+	// sequence + 1 of the command a slot holds
+	private final AtomicLongArray published;
+	private final AtomicLong claimed = new AtomicLong();
+	private volatile long consumed;
+	private volatile long executed;
+	// claimed at the time of close(), the consumer runs up to here
+	private volatile long end = Long.MAX_VALUE;
+	private volatile boolean consumerParked;
+
+	private final Command[] batch;
+	// identity table of receiver -> index in batch of its latest command,
+	// entries are valid when their stamp is the current batch's
+	private final Object[] receivers;
+	private final int[] latest;
+	private final int[] stamps;
+	private int stamp;
+
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final Thread consumer;
+
+	/**
+	 * @param capacity  number of ring slots, a power of two
+	 * @param batchSize most commands coalesced together
+	 */
+	public CoalescingCommandExecutor(int capacity, int batchSize) {
+		if (Integer.bitCount(capacity) != 1 || batchSize < 1 || batchSize > capacity) {
+			throw new IllegalArgumentException("Capacity must be a power of two and at least the batch size");
+		}
+		this.mask = capacity - 1;
+		this.slots = new Command[capacity];
+		this.published = new AtomicLongArray(capacity);
+		this.batch = new Command[batchSize];
+		int tableSize = Integer.highestOneBit(batchSize) * 4;
+		this.receivers = new Object[tableSize];
+		this.latest = new int[tableSize];
+		this.stamps = new int[tableSize];
+		this.consumer = new Thread(this::consume, "command-executor");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	@Override
+	public void submit(Command command) {
+		long sequence = claimed.getAndIncrement();
+		if (sequence >= CLOSED) {
+			throw new IllegalStateException("Executor is closed");
+		}
+		// wait for the consumer to free the slot
+		for (int spins = 0; sequence - consumed > mask; spins++) {
+			if (!consumer.isAlive()) {
+				throw new IllegalStateException("Executor consumer has stopped");
+			}
+			if (spins < 100) {
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(10_000);
+			}
+		}
+		int slot = (int) (sequence & mask);
+		slots[slot] = command;
+		published.set(slot, sequence + 1);
+		if (consumerParked) {
+			LockSupport.unpark(consumer);
+		}
+		if (!consumer.isAlive() && executed <= sequence) {
+			throw new IllegalStateException("Executor consumer has stopped");
+		}
+	}
+
+	private void consume() {
+		long next = 0;
+		while (next < end) {
+			int count = 0;
+			while (count < batch.length) {
+				int slot = (int) ((next + count) & mask);
+				if (published.get(slot) != next + count + 1) {
+					break;
+				}
+				batch[count++] = slots[slot];
+				slots[slot] = null;
+			}
+			if (count == 0) {
+				consumerParked = true;
+				if (published.get((int) (next & mask)) != next + 1) {
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+				}
+				consumerParked = false;
+				continue;
+			}
+			next += count;
+			// the slots are copied, producers may reuse them while the batch runs
+			consumed = next;
+			coalesce(count);
+			for (int i = 0; i < count; i++) {
+				Command command = batch[i];
+				if (command != null) {
+					batch[i] = null;
+					try {
+						command.execute();
+					} catch (Throwable e) {
+						failed.incrementAndGet();
+					}
+				}
+			}
+			executed = next;
+		}
+	}
+
+	// clears the batch entries superseded by a later command for the same receiver
+	private void coalesce(int count) {
+		newStamp();
+		int tableMask = receivers.length - 1;
+		for (int i = 0; i < count; i++) {
+			if (!(batch[i] instanceof CoalescingCommand)) {
+				newStamp();
+				continue;
+			}
+			Object receiver = ((CoalescingCommand) batch[i]).getReceiver();
+			int h = System.identityHashCode(receiver) & tableMask;
+			while (stamps[h] == stamp && receivers[h] != receiver) {
+				h = (h + 1) & tableMask;
+			}
+			if (stamps[h] == stamp) {
+				batch[latest[h]] = null;
+				coalesced.incrementAndGet();
+			} else {
+				stamps[h] = stamp;
+				receivers[h] = receiver;
+			}
+			latest[h] = i;
+		}
+	}
+
+	private void newStamp() {
+		if (++stamp == 0) {
+			Arrays.fill(stamps, 0);
+			Arrays.fill(receivers, null);
+			stamp = 1;
+		}
+	}
+
+	/** Waits until every command submitted so far has been executed or coalesced. */
+	public void flush() {
+		long target = Math.min(claimed.get(), end);
+		while (executed < target && consumer.isAlive()) {
+			LockSupport.unpark(consumer);
+			LockSupport.parkNanos(50_000);
+		}
+	}
+
+	public long getSubmittedCount() {
+		return Math.min(claimed.get(), end);
+	}
+
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/** Runs the remaining commands and stops the consumer thread. */
+	@Override
+	public void close() {
+		long claims = claimed.get();
+		while (claims < CLOSED && !claimed.compareAndSet(claims, claims + CLOSED)) {
+			claims = claimed.get();
+		}
+		if (claims < CLOSED) {
+			end = claims;
+		}
+		LockSupport.unpark(consumer);
+		try {
+			consumer.join();
+		} catch (InterruptedException e) {
+			// the consumer finishes on its own
+			Thread.currentThread().interrupt();
+		}
+	}
+}
+
+/**
+ * Bursts of on/off commands for a fleet of lights, pressed on
+ * {@link RemoteControl}s by 1..4 threads, run synchronously and through a
+ * {@link CoalescingCommandExecutor}. Reports commands per second and how many
+ * were coalesced, and checks with a single producer that every light ends in
+ * the state of its last command.
+ */
+public class CommandRingBenchmark {
+
+	private static final int LIGHTS = 4096;
+	private static final int COMMANDS = 8_000_000;
+	// a burst is a few commands for the same light in a row
+	private static final int BURST = 4;
+
+	public static void main(String[] args) throws InterruptedException {
+		Light[] lights = new Light[LIGHTS];
+		Command[] on = new Command[LIGHTS];
+		Command[] off = new Command[LIGHTS];
+		for (int i = 0; i < LIGHTS; i++) {
+			lights[i] = new Light();
+			on[i] = new LightOnCommand(lights[i]);
+			off[i] = new LightOffCommand(lights[i]);
+		}
+		// the lights print every switch, the benchmark measures the commands
+		OutputSink stdout = AsyncOutput.DEFAULT.redirect(OutputSink.discard());
+		try {
+			RemoteControl direct = new RemoteControl();
+			long start = System.nanoTime();
+			press(direct, on, off, 0, COMMANDS);
+			AsyncOutput.DEFAULT.flush();
+			long elapsed = System.nanoTime() - start;
+			System.out.printf("synchronous:          %,12.0f commands/s%n", COMMANDS * 1e9 / elapsed);
+
+			for (int threads = 1; threads <= 4; threads *= 2) {
+				try (CoalescingCommandExecutor executor = new CoalescingCommandExecutor(1 << 14, 1 << 10)) {
+					Thread[] producers = new Thread[threads];
+					int perThread = COMMANDS / threads;
+					start = System.nanoTime();
+					for (int t = 0; t < threads; t++) {
+						int seed = t;
+						producers[t] = new Thread(() -> press(new RemoteControl(executor), on, off, seed, perThread));
+						producers[t].start();
+					}
+					for (Thread producer : producers) {
+						producer.join();
+					}
+					executor.flush();
+					AsyncOutput.DEFAULT.flush();
+					elapsed = System.nanoTime() - start;
+					System.out.printf("ring, %d producer(s):  %,12.0f commands/s, %4.1f%% coalesced%n", threads,
+							executor.getSubmittedCount() * 1e9 / elapsed,
+							100.0 * executor.getCoalescedCount() / executor.getSubmittedCount());
+
+					if (threads == 1) {
+						int wrong = 0;
+						boolean[] expected = lastStates(new Random(0), perThread);
+						for (int i = 0; i < LIGHTS; i++) {
+							if (lights[i].isOn() != expected[i]) {
+								wrong++;
+							}
+						}
+						System.out.println("lights in the wrong state: " + wrong);
+					}
+				}
+			}
+		} finally {
+			AsyncOutput.DEFAULT.redirect(stdout);
+		}
+	}
+
+	private static void press(RemoteControl control, Command[] on, Command[] off, int seed, int commands) {
+		Random random = new Random(seed);
+		for (int i = 0; i < commands; i += BURST) {
+			int light = random.nextInt(LIGHTS);
+			for (int b = 0; b < BURST; b++) {
+				control.setCommand(random.nextBoolean() ? on[light] : off[light]);
+				control.pressButton();
+			}
+		}
+	}
+
+	// replays the random sequence of press() without running the commands
+	private static boolean[] lastStates(Random random, int commands) {
+		boolean[] states = new boolean[LIGHTS];
+		for (int i = 0; i < commands; i += BURST) {
+			int light = random.nextInt(LIGHTS);
+			for (int b = 0; b < BURST; b++) {
+				states[light] = random.nextBoolean();
+			}
+		}
+		return states;
+	}
+}
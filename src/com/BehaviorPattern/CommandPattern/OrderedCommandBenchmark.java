@@ -0,0 +1,296 @@
+package com.BehaviorPattern.CommandPattern;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.ConcurrencyPattern.VirtualThreads;
+
+/**
+ * Runs commands in parallel while keeping the commands of every receiver in
+ * submission order. A {@link ReceiverCommand} is hashed by the identity of its
+ * receiver to one of a fixed number of serial lanes, so commands for the same
+ * {@link Light} never overtake each other while different lights are switched
+ * concurrently. Commands without a receiver are hashed by their own identity.
+ *
+ * A lane is a bounded queue drained in batches by one task at a time on the
+ * given executor, a platform thread pool or virtual threads. When a lane is
+ * full, <code>submit</code> waits: producers are slowed down to the speed of
+ * the lanes they feed, and a burst for one receiver cannot use up memory.
+ *
+ * A command that throws an exception is counted and skipped, the lane keeps
+ * going; an Error is passed on to the executor once the lane has been handed
+ * on. After close() has started, submit throws IllegalStateException; every
+ * command submitted before has been run when close() returns.
+ *
+ * @author nitin
+ *
+ */
+class OrderedCommandExecutor implements CommandExecutor, AutoCloseable {
+
+	private static final int DRAIN_BATCH = 64;
+
+	private final class Lane implements Runnable {
+		private final ArrayBlockingQueue<Command> commands;
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		Lane(int capacity) {
+			this.commands = new ArrayBlockingQueue<>(capacity);
+		}
+
+		void offer(Command command) {
+			try {
+				commands.put(command);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted waiting for a full lane", e);
+			}
+			schedule();
+		}
+
+		private void schedule() {
+			if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					scheduled.set(false);
+					throw e;
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (int i = 0; i < DRAIN_BATCH; i++) {
+					Command command = commands.poll();
+					if (command == null) {
+						break;
+					}
+					try {
+						command.execute();
+					} catch (RuntimeException e) {
+						failed.incrementAndGet();
+					} finally {
+						completed.increment();
+					}
+				}
+			} finally {
+				scheduled.set(false);
+				// a command may have arrived after the last poll
+				if (!commands.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+	}
+
+	private final Lane[] lanes;
+	private final ExecutorService executor;
+	private final LongAdder submitted = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final AtomicLong failed = new AtomicLong();
+	// submits between their check of closed and their enqueue, close() waits
+	// for them before the last flush
+	private final AtomicInteger submitting = new AtomicInteger();
+	private volatile boolean closed;
+
+	/**
+	 * @param lanes        number of serial lanes, receivers are spread over them
+	 * @param laneCapacity commands a lane holds before <code>submit</code> waits
+	 * @param executor     runs the lanes, shut down by {@link #close()}
+	 */
+	public OrderedCommandExecutor(int lanes, int laneCapacity, ExecutorService executor) {
+		this.lanes = new Lane[lanes];
+		for (int i = 0; i < lanes; i++) {
+			this.lanes[i] = new Lane(laneCapacity);
+		}
+		this.executor = executor;
+	}
+
+	/**
+	 * Virtual threads when the runtime has them (Java 21+), otherwise a
+	 * {@link ForkJoinPool} of <code>threads</code>.
+	 */
+	static ExecutorService newLaneExecutor(int threads) {
+		return VirtualThreads.newPerTaskExecutor(() -> new ForkJoinPool(threads));
+	}
+
+	@Override
+	public void submit(Command command) {
+		Object key = command instanceof ReceiverCommand ? ((ReceiverCommand) command).getReceiver() : command;
+		int h = System.identityHashCode(key);
+		// spread the bits, identity hashes are not uniform in the low ones
+		h ^= h >>> 16;
+		submitting.incrementAndGet();
+		try {
+			if (closed) {
+				throw new IllegalStateException("Executor is closed");
+			}
+			submitted.increment();
+			lanes[(h & Integer.MAX_VALUE) % lanes.length].offer(command);
+		} finally {
+			submitting.decrementAndGet();
+		}
+	}
+
+	/** Waits until every command submitted so far has been executed. */
+	public void flush() {
+		long target = submitted.sum();
+		while (completed.sum() < target) {
+			LockSupport.parkNanos(50_000);
+		}
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/** Runs the remaining commands and shuts the executor down. */
+	@Override
+	public void close() {
+		closed = true;
+		while (submitting.get() != 0) {
+			LockSupport.parkNanos(50_000);
+		}
+		flush();
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			// the lanes are empty, only idle threads are left to stop
+			Thread.currentThread().interrupt();
+		}
+	}
+}
+
+/**
+ * Commands for 1 to 4096 receivers run through an
+ * {@link OrderedCommandExecutor} with 1 to 16 lanes, and through a plain
+ * thread pool for comparison. A command either waits like a device round trip
+ * or computes for a while; every receiver checks that its commands arrive in
+ * order. The core count is printed first: with fewer cores than lanes the
+ * computing commands cannot scale with the lanes, only the waiting ones can.
+ */
+public class OrderedCommandBenchmark {
+
+	private static final int COMMANDS = 20_000;
+	private static final long DEVICE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+	private static final long COMPUTE_NANOS = TimeUnit.MICROSECONDS.toNanos(5);
+
+	/** Receiver that counts commands arriving out of order. */
+	static final class Device {
+		private long last = -1;
+		int outOfOrder;
+
+		void apply(long sequence) {
+			if (sequence != last + 1) {
+				outOfOrder++;
+			}
+			last = sequence;
+		}
+	}
+
+	static final class DeviceCommand implements ReceiverCommand {
+		private final Device device;
+		private final long sequence;
+		private final boolean blocking;
+
+		DeviceCommand(Device device, long sequence, boolean blocking) {
+			this.device = device;
+			this.sequence = sequence;
+			this.blocking = blocking;
+		}
+
+		@Override
+		public void execute() {
+			if (blocking) {
+				LockSupport.parkNanos(DEVICE_NANOS);
+			} else {
+				long end = System.nanoTime() + COMPUTE_NANOS;
+				while (System.nanoTime() < end) {
+				}
+			}
+			device.apply(sequence);
+		}
+
+		@Override
+		public Object getReceiver() {
+			return device;
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		System.out.printf("%d cores%n", Runtime.getRuntime().availableProcessors());
+		for (boolean blocking : new boolean[] { true, false }) {
+			System.out.println(blocking ? "device round trips of 50 us:" : "5 us of computation:");
+			for (int receivers : new int[] { 1, 16, 4096 }) {
+				StringBuilder line = new StringBuilder(String.format("  %4d receivers", receivers));
+				for (int lanes = 1; lanes <= 16; lanes *= 2) {
+					Device[] devices = devices(receivers);
+					long start = System.nanoTime();
+					try (OrderedCommandExecutor executor = new OrderedCommandExecutor(lanes, 256,
+							OrderedCommandExecutor.newLaneExecutor(lanes))) {
+						RemoteControl control = new RemoteControl(executor);
+						press(control, devices, blocking);
+						executor.flush();
+					}
+					long elapsed = System.nanoTime() - start;
+					line.append(String.format(" | %2d lanes %,9.0f/s", lanes, COMMANDS * 1e9 / elapsed));
+					check(devices);
+				}
+				System.out.println(line);
+			}
+
+			// the naive version: any pool thread takes any command
+			Device[] devices = devices(16);
+			ExecutorService pool = Executors.newFixedThreadPool(16);
+			long start = System.nanoTime();
+			RemoteControl control = new RemoteControl(command -> pool.execute(command::execute));
+			press(control, devices, blocking);
+			pool.shutdown();
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+			System.out.printf("  plain pool of 16, 16 receivers: %,9.0f/s, commands out of order: %d%n",
+					COMMANDS * 1e9 / (System.nanoTime() - start), outOfOrder(devices));
+		}
+	}
+
+	private static Device[] devices(int receivers) {
+		Device[] devices = new Device[receivers];
+		for (int i = 0; i < receivers; i++) {
+			devices[i] = new Device();
+		}
+		return devices;
+	}
+
+	private static void press(RemoteControl control, Device[] devices, boolean blocking) {
+		long[] sequences = new long[devices.length];
+		for (int i = 0; i < COMMANDS; i++) {
+			int d = i % devices.length;
+			control.setCommand(new DeviceCommand(devices[d], sequences[d]++, blocking));
+			control.pressButton();
+		}
+	}
+
+	private static int outOfOrder(Device[] devices) {
+		int count = 0;
+		for (Device device : devices) {
+			count += device.outOfOrder;
+		}
+		return count;
+	}
+
+	private static void check(Device[] devices) {
+		if (outOfOrder(devices) != 0) {
+			throw new IllegalStateException("Commands of a receiver were reordered");
+		}
+	}
+}
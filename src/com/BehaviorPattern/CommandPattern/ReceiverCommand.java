@@ -0,0 +1,11 @@
+package com.BehaviorPattern.CommandPattern;
+
+/**
+ * Command that acts on a single receiver object.
+ *
+ * @author nitin
+ *
+ */
+interface ReceiverCommand extends Command {
+	Object getReceiver();
+}
@@ -4,6 +4,8 @@ package com.BehaviorPattern.Mediator;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.ConcurrencyPattern.AsyncOutput;
+
 /**
  * Mediator pattern is used to reduce communication complexity between multiple
  * objects or classes. This pattern provides a mediator class which normally
@@ -48,13 +50,13 @@ class UserImpl extends User {
 
 	@Override
 	public void send(String msg) {
-		System.out.println(this.name + ": Sending Message=" + msg);
+		AsyncOutput.DEFAULT.line().append(this.name).append(": Sending Message=").append(msg).println();
 		mediator.sendMessage(msg, this);
 	}
 
 	@Override
 	public void receive(String msg) {
-		System.out.println(this.name + ": Received Message:" + msg);
+		AsyncOutput.DEFAULT.line().append(this.name).append(": Received Message:").append(msg).println();
 	}
 
 }
@@ -0,0 +1,343 @@
+package com.BehaviorPattern.Mediator;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import com.ConcurrencyPattern.VirtualThreads;
+
+/**
+ * What a room does with a message for a member whose mailbox is full.
+ *
+ * @author nitin
+ *
+ */
+enum OverflowPolicy {
+	/** the new message is dropped */
+	DROP_NEWEST,
+	/** the oldest queued message is dropped to make room */
+	DROP_OLDEST,
+	/**
+	 * the sender waits until the member has caught up; once the executor is
+	 * shut down the message is dropped instead
+	 */
+	BLOCK
+}
+
+/**
+ * {@link ChatMediator} for large rooms. Members are kept in a copy-on-write
+ * array replaced with compare-and-set, so users can join or leave while
+ * messages are being sent. Every member has a bounded mailbox drained on the
+ * room's executor, so <code>sendMessage</code> only enqueues and a slow
+ * receiver delays nobody but itself (unless the policy is
+ * {@link OverflowPolicy#BLOCK}).
+ */
+class ConcurrentChatMediator implements ChatMediator {
+
+	private static final int DRAIN_BATCH = 64;
+
+	private final class Mailbox implements Runnable {
+		private final User user;
+		private final ConcurrentLinkedQueue<String> messages = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger size = new AtomicInteger();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		Mailbox(User user) {
+			this.user = user;
+		}
+
+		void offer(String msg) {
+			while (true) {
+				int current = size.get();
+				if (current < capacity) {
+					if (size.compareAndSet(current, current + 1)) {
+						messages.add(msg);
+						break;
+					}
+					continue;
+				}
+				if (policy == OverflowPolicy.DROP_NEWEST) {
+					dropped.incrementAndGet();
+					return;
+				}
+				if (policy == OverflowPolicy.DROP_OLDEST) {
+					if (messages.poll() != null) {
+						size.decrementAndGet();
+						dropped.incrementAndGet();
+					}
+					continue;
+				}
+				if (executor.isShutdown()) {
+					// nothing will drain the mailbox any more, waiting would hang the sender
+					dropped.incrementAndGet();
+					return;
+				}
+				schedule();
+				LockSupport.parkNanos(10_000);
+			}
+			schedule();
+		}
+
+		private void schedule() {
+			if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					// the server is shutting down, undelivered messages are dropped
+					scheduled.set(false);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (int i = 0; i < DRAIN_BATCH; i++) {
+					String msg = messages.poll();
+					if (msg == null) {
+						break;
+					}
+					size.decrementAndGet();
+					try {
+						user.receive(msg);
+					} catch (RuntimeException e) {
+						// one failing receiver must not stop its own mailbox
+						failed.incrementAndGet();
+					}
+				}
+			} finally {
+				scheduled.set(false);
+				// a message may have arrived after the last poll
+				if (!messages.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+	}
+
+	private static final Mailbox[] EMPTY = new Mailbox[0];
+
+	private final AtomicReference<Mailbox[]> members = new AtomicReference<>(EMPTY);
+	private final ExecutorService executor;
+	private final int capacity;
+	private final OverflowPolicy policy;
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	public ConcurrentChatMediator(ExecutorService executor, int mailboxCapacity, OverflowPolicy policy) {
+		this.executor = executor;
+		this.capacity = mailboxCapacity;
+		this.policy = policy;
+	}
+
+	@Override
+	public void addUser(User user) {
+		Mailbox mailbox = new Mailbox(user);
+		Mailbox[] current;
+		Mailbox[] next;
+		do {
+			current = members.get();
+			next = Arrays.copyOf(current, current.length + 1);
+			next[current.length] = mailbox;
+		} while (!members.compareAndSet(current, next));
+	}
+
+	public void removeUser(User user) {
+		Mailbox[] current;
+		Mailbox[] next;
+		do {
+			current = members.get();
+			int index = indexOf(current, user);
+			if (index < 0) {
+				return;
+			}
+			next = new Mailbox[current.length - 1];
+			System.arraycopy(current, 0, next, 0, index);
+			System.arraycopy(current, index + 1, next, index, next.length - index);
+		} while (!members.compareAndSet(current, next));
+	}
+
+	private static int indexOf(Mailbox[] mailboxes, User user) {
+		for (int i = 0; i < mailboxes.length; i++) {
+			if (mailboxes[i].user == user) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void sendMessage(String msg, User user) {
+		for (Mailbox mailbox : members.get()) {
+			// message should not be received by the user sending it
+			if (mailbox.user != user) {
+				mailbox.offer(msg);
+			}
+		}
+	}
+
+	public int getMemberCount() {
+		return members.get().length;
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/** Messages whose {@link User#receive(String)} threw. */
+	public long getFailedCount() {
+		return failed.get();
+	}
+}
+
+/**
+ * Rooms by name, sharded over a fixed set of executors so a busy room only
+ * competes with the rooms of its own shard. The executors run on virtual
+ * threads when the runtime has them (Java 21+), otherwise each shard is a
+ * small {@link ForkJoinPool}, whose submission is cheaper than a
+ * ThreadPoolExecutor's for the many short drain tasks.
+ */
+class ShardedChatServer implements AutoCloseable {
+
+	private final ExecutorService[] shards;
+	private final ConcurrentHashMap<String, ConcurrentChatMediator> rooms = new ConcurrentHashMap<>();
+	private final int mailboxCapacity;
+	private final OverflowPolicy policy;
+
+	public ShardedChatServer(int shards, int threadsPerShard, int mailboxCapacity, OverflowPolicy policy) {
+		this.shards = new ExecutorService[shards];
+		for (int i = 0; i < shards; i++) {
+			this.shards[i] = newShardExecutor(threadsPerShard);
+		}
+		this.mailboxCapacity = mailboxCapacity;
+		this.policy = policy;
+	}
+
+	public ConcurrentChatMediator room(String name) {
+		return rooms.computeIfAbsent(name, n -> new ConcurrentChatMediator(
+				shards[(n.hashCode() & Integer.MAX_VALUE) % shards.length], mailboxCapacity, policy));
+	}
+
+	private static ExecutorService newShardExecutor(int threads) {
+		return VirtualThreads.newPerTaskExecutor(() -> new ForkJoinPool(threads));
+	}
+
+	@Override
+	public void close() {
+		for (ExecutorService shard : shards) {
+			shard.shutdown();
+		}
+		try {
+			for (ExecutorService shard : shards) {
+				shard.awaitTermination(1, TimeUnit.MINUTES);
+			}
+		} catch (InterruptedException e) {
+			// the shards finish on their own, stop waiting for them
+			Thread.currentThread().interrupt();
+		}
+	}
+}
+
+/**
+ * Broadcasts into large rooms through {@link ChatMediatorImpl} and
+ * {@link ShardedChatServer} with every overflow policy, each once more with
+ * one member that takes 5 ms per message.
+ */
+public class ChatFanOutBenchmark {
+
+	private static final int MEMBERS = 20_000;
+	private static final int MESSAGES = 200;
+	private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+	static class CountingUser extends User {
+		private final AtomicLong received;
+		private final long delayNanos;
+
+		CountingUser(ChatMediator mediator, String name, AtomicLong received, long delayNanos) {
+			super(mediator, name);
+			this.received = received;
+			this.delayNanos = delayNanos;
+		}
+
+		@Override
+		public void send(String msg) {
+			mediator.sendMessage(msg, this);
+		}
+
+		@Override
+		public void receive(String msg) {
+			if (delayNanos > 0) {
+				LockSupport.parkNanos(delayNanos);
+			}
+			received.incrementAndGet();
+		}
+	}
+
+	public static void main(String[] args) {
+		long expected = (long) MESSAGES * (MEMBERS - 1);
+
+		AtomicLong received = new AtomicLong();
+		for (boolean slowMember : new boolean[] { false, true }) {
+			received.set(0);
+			ChatMediator plain = new ChatMediatorImpl();
+			User sender = join(plain, received, 0);
+			for (int i = 2; i < MEMBERS; i++) {
+				join(plain, received, 0);
+			}
+			join(plain, received, slowMember ? SLOW_NANOS : 0);
+			long start = System.nanoTime();
+			for (int m = 0; m < MESSAGES; m++) {
+				sender.send("message " + m);
+			}
+			report("ChatMediatorImpl" + (slowMember ? " + slow member" : ""), received.get(), System.nanoTime() - start,
+					0);
+		}
+
+		for (OverflowPolicy policy : OverflowPolicy.values()) {
+			for (boolean slowMember : new boolean[] { false, true }) {
+				received.set(0);
+				try (ShardedChatServer server = new ShardedChatServer(4, 2, 64, policy)) {
+					ConcurrentChatMediator room = server.room("lobby");
+					User sender = join(room, received, 0);
+					for (int i = 2; i < MEMBERS; i++) {
+						join(room, received, 0);
+					}
+					join(room, received, slowMember ? SLOW_NANOS : 0);
+					long start = System.nanoTime();
+					for (int m = 0; m < MESSAGES; m++) {
+						sender.send("message " + m);
+					}
+					long sendNs = System.nanoTime() - start;
+					// the fast members are done when all but the slow one's share arrived
+					long target = expected - (slowMember ? MESSAGES : 0);
+					while (received.get() + room.getDroppedCount() + room.getFailedCount() < target) {
+						LockSupport.parkNanos(100_000);
+					}
+					long elapsed = System.nanoTime() - start;
+					report(policy + (slowMember ? " + slow member" : ""), received.get(), elapsed, sendNs);
+				}
+			}
+		}
+	}
+
+	private static User join(ChatMediator room, AtomicLong received, long delayNanos) {
+		User user = new CountingUser(room, "user", received, delayNanos);
+		room.addUser(user);
+		return user;
+	}
+
+	private static void report(String name, long delivered, long elapsedNs, long sendNs) {
+		System.out.printf("%-28s %,12.0f deliveries/s, sender busy %,6d ms, total %,6d ms%n", name,
+				delivered * 1e9 / elapsedNs, TimeUnit.NANOSECONDS.toMillis(sendNs == 0 ? elapsedNs : sendNs),
+				TimeUnit.NANOSECONDS.toMillis(elapsedNs));
+	}
+}
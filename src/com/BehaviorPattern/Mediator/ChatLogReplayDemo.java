@@ -0,0 +1,441 @@
+package com.BehaviorPattern.Mediator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ConcurrencyPattern.AsyncOutput;
+import com.ConcurrencyPattern.OutputSink;
+
+/**
+ * Append-only log of chat messages, split into memory-mapped segment files of
+ * a fixed size. Every message gets an offset, its position in the whole log
+ * starting at 0, and a segment file is named after the offset of its first
+ * message (<code>00000000000000000000.chat</code>).
+ *
+ * <pre>
+ * record   payload length int, payload
+ * payload  sender length short, sender UTF-8 bytes, message UTF-8 bytes
+ * </pre>
+ *
+ * Integers are little-endian. Segments are created at full size, so the zero
+ * length of the unused tail marks the end of the records. Every
+ * {@link #INDEX_INTERVAL}th record of a segment is kept in a sparse in-memory
+ * index, rebuilt by a sequential scan when the log is opened, so a replay from
+ * any offset skips at most that many records.
+ *
+ * One thread appends at a time; any number of threads can replay concurrently
+ * with the appender. When a new segment is started the oldest ones are
+ * deleted until the log fits in the retention size again. Windows refuses to
+ * delete a file that is still mapped, and a mapping is only released when its
+ * buffer is garbage collected, so a file that cannot be deleted yet is tried
+ * again on every later roll.
+ *
+ * @author nitin
+ *
+ */
+class ChatMessageLog implements Closeable {
+
+	static final int INDEX_INTERVAL = 64;
+	private static final String SUFFIX = ".chat";
+
+	interface MessageVisitor {
+		void message(long offset, String sender, String msg);
+	}
+
+	private static final class Segment {
+		final long base;
+		final Path file;
+		final FileChannel channel;
+		final MappedByteBuffer buffer;
+		// positions of records base, base + INDEX_INTERVAL, ...
+		volatile int[] index = new int[16];
+		volatile int indexed;
+		// written by the appender after the record bytes, so readers that see
+		// the new end also see the record
+		volatile int end;
+		volatile long next;
+
+		Segment(Path file, long base, int size) throws IOException {
+			this.base = base;
+			this.next = base;
+			this.file = file;
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		void recover() {
+			int position = 0;
+			long offset = base;
+			while (position + 4 <= buffer.capacity()) {
+				int length = buffer.getInt(position);
+				if (length <= 0 || position + 4 + length > buffer.capacity()) {
+					break;
+				}
+				indexRecord(offset, position);
+				position += 4 + length;
+				offset++;
+			}
+			end = position;
+			next = offset;
+		}
+
+		void indexRecord(long offset, int position) {
+			if ((offset - base) % INDEX_INTERVAL == 0) {
+				int[] current = index;
+				if (indexed == current.length) {
+					current = Arrays.copyOf(current, current.length * 2);
+				}
+				current[indexed] = position;
+				index = current;
+				indexed = indexed + 1;
+			}
+		}
+
+		/** Position of the record at <code>offset</code>, or <code>end</code>. */
+		int positionOf(long offset, int end) {
+			int entries = indexed;
+			if (entries == 0) {
+				return end;
+			}
+			int[] positions = index;
+			long slot = Math.min((offset - base) / INDEX_INTERVAL, entries - 1);
+			int position = positions[(int) slot];
+			for (long skip = base + slot * INDEX_INTERVAL; skip < offset && position < end; skip++) {
+				position += 4 + buffer.getInt(position);
+			}
+			return position;
+		}
+	}
+
+	private final Path directory;
+	private final int segmentSize;
+	private final long retentionBytes;
+	private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+	private final AtomicLong deletedSegments = new AtomicLong();
+	// files of retired segments the platform would not delete yet
+	private final List<Path> undeleted = new ArrayList<>();
+	private Segment active;
+
+	/**
+	 * Opens the log in <code>directory</code>, recovering the segments already
+	 * there.
+	 *
+	 * @param segmentSize    bytes per segment file, at most 2 GB
+	 * @param retentionBytes the oldest segments are deleted beyond this size
+	 */
+	public ChatMessageLog(Path directory, int segmentSize, long retentionBytes) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.segmentSize = segmentSize;
+		this.retentionBytes = retentionBytes;
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			Segment segment = new Segment(file, Long.parseLong(name.substring(0, name.length() - SUFFIX.length())),
+					segmentSize);
+			segment.recover();
+			segments.put(segment.base, segment);
+		}
+		active = segments.isEmpty() ? roll(0) : segments.lastEntry().getValue();
+	}
+
+	/** Appends a message and returns its offset. */
+	public synchronized long append(String sender, String msg) throws IOException {
+		byte[] from = sender.getBytes(StandardCharsets.UTF_8);
+		byte[] text = msg.getBytes(StandardCharsets.UTF_8);
+		int length = 2 + from.length + text.length;
+		if (from.length > Short.MAX_VALUE || 4 + length > segmentSize) {
+			throw new IllegalArgumentException("Message of " + length + " bytes does not fit in a segment");
+		}
+		if (active.end + 4 + length > active.buffer.capacity()) {
+			active = roll(active.next);
+		}
+		Segment segment = active;
+		int position = segment.end;
+		ByteBuffer buffer = segment.buffer;
+		buffer.putShort(position + 4, (short) from.length);
+		for (int i = 0; i < from.length; i++) {
+			buffer.put(position + 6 + i, from[i]);
+		}
+		int start = position + 6 + from.length;
+		for (int i = 0; i < text.length; i++) {
+			buffer.put(start + i, text[i]);
+		}
+		// the length goes last, a crash before it leaves the record unwritten
+		buffer.putInt(position, length);
+		long offset = segment.next;
+		segment.indexRecord(offset, position);
+		segment.next = offset + 1;
+		segment.end = position + 4 + length;
+		return offset;
+	}
+
+	private Segment roll(long base) throws IOException {
+		if (active != null) {
+			active.buffer.force();
+		}
+		Segment segment = new Segment(directory.resolve(String.format("%020d%s", base, SUFFIX)), base, segmentSize);
+		segments.put(base, segment);
+		undeleted.removeIf(ChatMessageLog::delete);
+		// the active segment is never deleted
+		while (segments.size() > 1 && (long) segments.size() * segmentSize > retentionBytes) {
+			Segment oldest = segments.pollFirstEntry().getValue();
+			oldest.channel.close();
+			// readers still holding the mapping can finish, it stays valid
+			if (!delete(oldest.file)) {
+				undeleted.add(oldest.file);
+			}
+			deletedSegments.incrementAndGet();
+		}
+		return segment;
+	}
+
+	private static boolean delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+			return true;
+		} catch (IOException e) {
+			// still mapped on Windows
+			return false;
+		}
+	}
+
+	/**
+	 * Visits every message from <code>offset</code> (or the oldest one retained)
+	 * up to the end of the log.
+	 *
+	 * @return the offset following the last message visited
+	 */
+	public long replay(long offset, MessageVisitor visitor) {
+		Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+		if (entry == null) {
+			entry = segments.firstEntry();
+		}
+		long next = offset;
+		while (entry != null) {
+			Segment segment = entry.getValue();
+			int end = segment.end;
+			next = Math.max(next, segment.base);
+			int position = segment.positionOf(next, end);
+			ByteBuffer buffer = segment.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			while (true) {
+				while (position < end) {
+					int length = buffer.getInt(position);
+					int senderLength = buffer.getShort(position + 4);
+					visitor.message(next, decode(buffer, position + 6, senderLength),
+							decode(buffer, position + 6 + senderLength, length - 2 - senderLength));
+					position += 4 + length;
+					next++;
+				}
+				entry = segments.higherEntry(segment.base);
+				// once a higher segment exists this one was rolled and its end is
+				// final, read it again for the records appended since the first read
+				int last = segment.end;
+				if (entry == null || last == end) {
+					break;
+				}
+				end = last;
+			}
+		}
+		return next;
+	}
+
+	private static String decode(ByteBuffer buffer, int position, int length) {
+		byte[] bytes = new byte[length];
+		buffer.position(position);
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Offset of the oldest retained message. */
+	public long getStartOffset() {
+		return segments.firstKey();
+	}
+
+	/** Offset the next message will get. */
+	public long getEndOffset() {
+		return segments.lastEntry().getValue().next;
+	}
+
+	public int getSegmentCount() {
+		return segments.size();
+	}
+
+	public long getDeletedSegmentCount() {
+		return deletedSegments.get();
+	}
+
+	/** Forces the messages appended so far to disk. */
+	public synchronized void flush() {
+		active.buffer.force();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		active.buffer.force();
+		for (Segment segment : segments.values()) {
+			segment.channel.close();
+		}
+	}
+}
+
+/**
+ * {@link ChatMediator} that writes every message to a {@link ChatMessageLog}
+ * before it is delivered, and brings users up to date when they join.
+ *
+ * Sends and joins are serialized, like the unsynchronized
+ * {@link ChatMediatorImpl} requires anyway, so a joining user gets every
+ * message exactly once: the history first, then the live ones. Most of the
+ * history is replayed before taking the lock, only the messages sent in the
+ * meantime are replayed while holding it.
+ */
+class LoggingChatMediator implements ChatMediator {
+
+	private final ChatMediator delegate;
+	private final ChatMessageLog log;
+
+	public LoggingChatMediator(ChatMediator delegate, ChatMessageLog log) {
+		this.delegate = delegate;
+		this.log = log;
+	}
+
+	@Override
+	public synchronized void sendMessage(String msg, User user) {
+		try {
+			log.append(user.name, msg);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not log message from " + user.name, e);
+		}
+		delegate.sendMessage(msg, user);
+	}
+
+	/** Adds the user after replaying all retained messages to it. */
+	@Override
+	public void addUser(User user) {
+		addUser(user, 0);
+	}
+
+	/**
+	 * Adds a new or reconnecting user after replaying the messages from
+	 * <code>offset</code> on. Messages the user sent itself (by name) are not
+	 * replayed, as they are not delivered to their sender live either.
+	 */
+	public void addUser(User user, long offset) {
+		ChatMessageLog.MessageVisitor replay = (o, sender, msg) -> {
+			if (!sender.equals(user.name)) {
+				user.receive(msg);
+			}
+		};
+		long next = log.replay(offset, replay);
+		synchronized (this) {
+			log.replay(next, replay);
+			delegate.addUser(user);
+		}
+	}
+
+	/** Offset of the next message, for users to remember when they leave. */
+	public long getEndOffset() {
+		return log.getEndOffset();
+	}
+}
+
+/**
+ * Chat with history: a late joiner replays the conversation, then the log is
+ * filled with a few million messages to measure append and replay speed,
+ * reopened, and replayed from the middle. The segments are small so that
+ * rollover and retention happen along the way.
+ */
+public class ChatLogReplayDemo {
+
+	public static void main(String[] args) throws IOException {
+		Path directory = Files.createTempDirectory("chatlog");
+		try {
+			try (ChatMessageLog log = new ChatMessageLog(directory, 32 << 20, 128L << 20)) {
+				LoggingChatMediator mediator = new LoggingChatMediator(new ChatMediatorImpl(), log);
+				User user1 = new UserImpl(mediator, "Pankaj");
+				User user2 = new UserImpl(mediator, "Lisa");
+				mediator.addUser(user1);
+				mediator.addUser(user2);
+				user1.send("Hi All");
+				user2.send("Hi Pankaj");
+				mediator.addUser(new UserImpl(mediator, "Saurabh"));
+				AsyncOutput.DEFAULT.flush();
+
+				int messages = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+				AtomicLong received = new AtomicLong();
+				User sender = new ChatFanOutBenchmark.CountingUser(mediator, "load", received, 0);
+				String[] texts = new String[1024];
+				for (int i = 0; i < texts.length; i++) {
+					texts[i] = "message number " + i + " about nothing in particular";
+				}
+				AsyncOutput.DEFAULT.redirect(OutputSink.discard());
+				long bytes = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < messages; i++) {
+					String text = texts[i & (texts.length - 1)];
+					sender.send(text);
+					bytes += 4 + 2 + 4 + text.length();
+				}
+				long appendNs = System.nanoTime() - start;
+				AsyncOutput.DEFAULT.flush();
+				AsyncOutput.DEFAULT.redirect(OutputSink.stdout());
+				System.out.printf("appended %,d messages: %,.0f messages/s, %,.0f MB/s, %d segments kept, %d deleted%n",
+						messages, messages * 1e9 / appendNs, bytes * 1e3 / appendNs, log.getSegmentCount(),
+						log.getDeletedSegmentCount());
+			}
+
+			try (ChatMessageLog log = new ChatMessageLog(directory, 32 << 20, 128L << 20)) {
+				long first = log.getStartOffset();
+				long last = log.getEndOffset();
+				long[] count = new long[2];
+				long start = System.nanoTime();
+				log.replay(first, (offset, sender, msg) -> {
+					count[0]++;
+					count[1] += msg.length();
+				});
+				long replayNs = System.nanoTime() - start;
+				System.out.printf("reopened, replayed %,d retained messages [%,d, %,d) in %d ms: %,.0f messages/s%n",
+						count[0], first, last, replayNs / 1_000_000, count[0] * 1e9 / replayNs);
+
+				long middle = first + (last - first) / 2 + 17;
+				long[] firstSeen = { -1 };
+				start = System.nanoTime();
+				log.replay(middle, (offset, sender, msg) -> {
+					if (firstSeen[0] < 0) {
+						firstSeen[0] = offset;
+					}
+				});
+				System.out.printf("replay from offset %,d started at %,d, took %d ms%n", middle, firstSeen[0],
+						(System.nanoTime() - start) / 1_000_000);
+			}
+		} finally {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+				for (Path file : files) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(directory);
+		}
+	}
+}
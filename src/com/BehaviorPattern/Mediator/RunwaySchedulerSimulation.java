@@ -0,0 +1,279 @@
+package com.BehaviorPattern.Mediator;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A flight asking for a landing slot. Requests are served by priority
+ * (0 is an emergency), then the least fuel left, then the earliest ETA; the
+ * sequence number keeps otherwise equal requests first come, first served.
+ *
+ * @author nitin
+ *
+ */
+final class LandingRequest implements Comparable<LandingRequest> {
+
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+
+	final int flight;
+	final int priority;
+	final int fuelMinutes;
+	/** expected arrival, in seconds of simulated time */
+	final long eta;
+	final long sequence = SEQUENCE.getAndIncrement();
+	volatile long submittedNanos;
+
+	LandingRequest(int flight, int priority, int fuelMinutes, long eta) {
+		this.flight = flight;
+		this.priority = priority;
+		this.fuelMinutes = fuelMinutes;
+		this.eta = eta;
+	}
+
+	@Override
+	public int compareTo(LandingRequest other) {
+		if (priority != other.priority) {
+			return Integer.compare(priority, other.priority);
+		}
+		if (fuelMinutes != other.fuelMinutes) {
+			return Integer.compare(fuelMinutes, other.fuelMinutes);
+		}
+		if (eta != other.eta) {
+			return Long.compare(eta, other.eta);
+		}
+		return Long.compare(sequence, other.sequence);
+	}
+}
+
+/**
+ * Hands out landing slots on many runways to many flights at once, the
+ * concurrent counterpart of {@link ATCMediator} with its single flight, single
+ * runway and unsynchronized <code>land</code> flag.
+ *
+ * Waiting requests sit in a lock-free ordered set, any thread can submit or
+ * dispatch. Every runway keeps the time it becomes free after its last slot,
+ * plus the idle gaps before that which are long enough for a landing: an
+ * urgent flight with a late ETA leaves such a gap, and a later request with an
+ * earlier ETA can still land in it. A dispatcher picks the earliest slot over
+ * all runways and claims it, the tail with compare-and-set and a gap by
+ * removing it from the runway's lock-free set, choosing again if another
+ * dispatcher got there first.
+ */
+class RunwaySlotScheduler {
+
+	// idle interval [start, end) of a runway, ordered by end; the gaps of one
+	// runway never overlap
+	private static final class Gap implements Comparable<Gap> {
+		final long start;
+		final long end;
+
+		Gap(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int compareTo(Gap other) {
+			if (end != other.end) {
+				return Long.compare(end, other.end);
+			}
+			return Long.compare(start, other.start);
+		}
+	}
+
+	private final ConcurrentSkipListSet<LandingRequest> waiting = new ConcurrentSkipListSet<>();
+	// simulated second from which each runway is free after its last slot
+	private final AtomicLongArray freeAt;
+	// gaps of at least one occupancy before freeAt, per runway
+	private final ConcurrentSkipListSet<Gap>[] gaps;
+	private final long occupancySeconds;
+	private final AtomicLong assigned = new AtomicLong();
+	private final AtomicLong gapSlots = new AtomicLong();
+
+	@SuppressWarnings("unchecked")
+	public RunwaySlotScheduler(int runways, long occupancySeconds) {
+		this.freeAt = new AtomicLongArray(runways);
+		this.gaps = (ConcurrentSkipListSet<Gap>[]) new ConcurrentSkipListSet<?>[runways];
+		for (int r = 0; r < runways; r++) {
+			gaps[r] = new ConcurrentSkipListSet<>();
+		}
+		this.occupancySeconds = occupancySeconds;
+	}
+
+	public void requestLanding(LandingRequest request) {
+		request.submittedNanos = System.nanoTime();
+		waiting.add(request);
+	}
+
+	public interface SlotListener {
+		void assigned(LandingRequest request, int runway, long slotStart);
+	}
+
+	/**
+	 * Assigns the most urgent waiting request, if any.
+	 *
+	 * @return false if nothing was waiting
+	 */
+	public boolean dispatch(SlotListener listener) {
+		LandingRequest request = waiting.pollFirst();
+		if (request == null) {
+			return false;
+		}
+		// the first gap ending at or after this holds a slot for the request, as
+		// every gap is at least one occupancy long
+		Gap fits = new Gap(Long.MIN_VALUE, request.eta + occupancySeconds);
+		while (true) {
+			// earliest slot, and of equal ones the best fit: the least idle time
+			// left in front of it
+			int best = -1;
+			Gap bestGap = null;
+			long bestFree = 0;
+			long bestStart = Long.MAX_VALUE;
+			long bestIdle = Long.MAX_VALUE;
+			for (int r = 0; r < freeAt.length(); r++) {
+				Gap gap = gaps[r].ceiling(fits);
+				long free = gap != null ? gap.start : freeAt.get(r);
+				long start = Math.max(free, request.eta);
+				if (start < bestStart || (start == bestStart && start - free < bestIdle)) {
+					best = r;
+					bestGap = gap;
+					bestFree = free;
+					bestStart = start;
+					bestIdle = start - free;
+				}
+			}
+			if (bestGap != null) {
+				if (!gaps[best].remove(bestGap)) {
+					continue;
+				}
+				addGap(best, bestGap.start, bestStart);
+				addGap(best, bestStart + occupancySeconds, bestGap.end);
+				gapSlots.incrementAndGet();
+			} else {
+				if (!freeAt.compareAndSet(best, bestFree, bestStart + occupancySeconds)) {
+					continue;
+				}
+				addGap(best, bestFree, bestStart);
+			}
+			assigned.incrementAndGet();
+			listener.assigned(request, best, bestStart);
+			return true;
+		}
+	}
+
+	private void addGap(int runway, long start, long end) {
+		if (end - start >= occupancySeconds) {
+			gaps[runway].add(new Gap(start, end));
+		}
+	}
+
+	public int getWaitingCount() {
+		return waiting.size();
+	}
+
+	public long getAssignedCount() {
+		return assigned.get();
+	}
+
+	/** Slots placed in an idle gap before a runway's last slot. */
+	public long getGapSlotCount() {
+		return gapSlots.get();
+	}
+}
+
+/**
+ * Simulates busy hours at an airport: the runways are 90% busy, 1% of the
+ * flights are emergencies and 5% are short of fuel. Worker threads submit
+ * their share of requests and dispatch, and the harness
+ * reports assignments per second, the simulated wait (slot start minus ETA)
+ * per class of flight, and the real time from request to assignment.
+ */
+public class RunwaySchedulerSimulation {
+
+	private static final int RUNWAYS = 4;
+	private static final long OCCUPANCY_SECONDS = 90;
+
+	public static void main(String[] args) throws InterruptedException {
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int flights : new int[] { 10_000, 100_000 }) {
+			for (int threads = 1; threads <= Math.max(8, cores * 2); threads *= 2) {
+				simulate(flights, threads);
+			}
+		}
+	}
+
+	private static void simulate(int flights, int threads) throws InterruptedException {
+		Random random = new Random(flights);
+		LandingRequest[] requests = new LandingRequest[flights];
+		// one arrival every 25 s against a capacity of one landing per 22.5 s
+		for (int i = 0; i < flights; i++) {
+			int roll = random.nextInt(100);
+			int priority = roll == 0 ? 0 : 1;
+			int fuel = roll < 6 ? 10 + random.nextInt(10) : 45 + random.nextInt(60);
+			requests[i] = new LandingRequest(i, priority, fuel, i * 25L + random.nextInt(120));
+		}
+
+		RunwaySlotScheduler scheduler = new RunwaySlotScheduler(RUNWAYS, OCCUPANCY_SECONDS);
+		long[] waits = new long[flights];
+		long[] latencies = new long[flights];
+		RunwaySlotScheduler.SlotListener listener = (request, runway, slotStart) -> {
+			waits[request.flight] = slotStart - request.eta;
+			latencies[request.flight] = System.nanoTime() - request.submittedNanos;
+		};
+
+		AtomicInteger nextRequest = new AtomicInteger();
+		Thread[] workers = new Thread[threads];
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new Thread(() -> {
+				while (scheduler.getAssignedCount() < flights) {
+					// submit a few arrivals, then hand out a few slots
+					for (int i = 0; i < 16; i++) {
+						int next = nextRequest.getAndIncrement();
+						if (next >= flights) {
+							break;
+						}
+						scheduler.requestLanding(requests[next]);
+					}
+					for (int i = 0; i < 16 && scheduler.dispatch(listener); i++) {
+					}
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		long[] emergency = select(requests, waits, 0);
+		long[] normal = select(requests, waits, 1);
+		Arrays.sort(latencies);
+		System.out.printf(
+				"%,7d flights %d threads: %,9.0f assignments/s | wait s p50/p99 emergency %d/%d, others %d/%d | %,d slots in gaps | request to slot p99 %,d us%n",
+				flights, threads, flights * 1e9 / elapsed, percentile(emergency, 0.5), percentile(emergency, 0.99),
+				percentile(normal, 0.5), percentile(normal, 0.99), scheduler.getGapSlotCount(),
+				percentile(latencies, 0.99) / 1000);
+	}
+
+	private static long[] select(LandingRequest[] requests, long[] waits, int priority) {
+		long[] selected = new long[requests.length];
+		int n = 0;
+		for (LandingRequest request : requests) {
+			if (request.priority == priority) {
+				selected[n++] = waits[request.flight];
+			}
+		}
+		selected = Arrays.copyOf(selected, n);
+		Arrays.sort(selected);
+		return selected;
+	}
+
+	private static long percentile(long[] sorted, double p) {
+		return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, (long) (sorted.length * p))];
+	}
+}
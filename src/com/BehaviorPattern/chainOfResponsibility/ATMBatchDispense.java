@@ -0,0 +1,393 @@
+package com.BehaviorPattern.chainOfResponsibility;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Non-interactive batch entry point for the ATM dispense logic. Replays a file
+ * of amounts instead of reading them one by one from the console.
+ *
+ * The input file is memory-mapped and split into chunks which are processed in
+ * parallel. Two formats are supported:
+ * <ul>
+ * <li>text: decimal amounts separated by whitespace (usually one per line)</li>
+ * <li>binary: big-endian 32 bit amounts, 4 bytes each</li>
+ * </ul>
+ *
+ * Amounts are parsed straight from the mapped bytes, no String is created per
+ * line. The result of every request is <code>amount</code> followed by the
+ * notes per denomination, or <code>-</code> if the amount cannot be dispensed
+ * or does not fit in an int. The chunks are run twice: the first pass only
+ * measures how many result bytes each chunk produces, so the second pass can
+ * write the results of every chunk straight to their final offset in the
+ * output through a reused buffer. The per-denomination totals are appended at
+ * the end. Binary input whose size is not a multiple of 4 is rejected.
+ *
+ * Usage: <code>ATMBatchDispense [input output [text|binary]]</code>. Without
+ * arguments a sample file is generated and replayed.
+ *
+ * @author nitin
+ *
+ */
+public class ATMBatchDispense {
+
+	// a single mapping cannot exceed 2 GB
+	private static final long MAX_CHUNK = 1L << 30;
+	private static final int OUT_BUFFER = 1 << 16;
+
+	private final DenominationSolver solver;
+	private final boolean binary;
+	private final int threads;
+
+	public ATMBatchDispense(DenominationSolver solver, boolean binary, int threads) {
+		this.solver = solver;
+		this.binary = binary;
+		this.threads = threads;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Path input;
+		Path output;
+		boolean binary;
+		if (args.length >= 2) {
+			input = Paths.get(args[0]);
+			output = Paths.get(args[1]);
+			binary = args.length > 2 && "binary".equals(args[2]);
+		} else {
+			input = Files.createTempFile("atm-amounts", ".txt");
+			output = Files.createTempFile("atm-results", ".txt");
+			binary = false;
+			input.toFile().deleteOnExit();
+			writeSample(input, 5_000_000);
+		}
+
+		ATMBatchDispense batch = new ATMBatchDispense(new OptimalDenominationSolver(1000, 50, 20, 10), binary,
+				Runtime.getRuntime().availableProcessors());
+		long start = System.nanoTime();
+		Summary summary = batch.run(input, output);
+		long elapsed = System.nanoTime() - start;
+
+		System.out.printf("%,d requests (%,d declined) in %d ms -> %s%n", summary.requests, summary.declined,
+				elapsed / 1_000_000, output);
+		for (int i = 0; i < batch.solver.size(); i++) {
+			System.out.println(batch.solver.getDenomination(i) + "$ notes: " + summary.notes[i]);
+		}
+	}
+
+	static class Summary {
+		long requests;
+		long declined;
+		// result bytes the chunk produced
+		long bytes;
+		final long[] notes;
+
+		Summary(int denominations) {
+			this.notes = new long[denominations];
+		}
+
+		void add(Summary other) {
+			requests += other.requests;
+			declined += other.declined;
+			bytes += other.bytes;
+			for (int i = 0; i < notes.length; i++) {
+				notes[i] += other.notes[i];
+			}
+		}
+	}
+
+	public Summary run(Path input, Path output) throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			if (binary && in.size() % 4 != 0) {
+				throw new IOException("Binary input of " + in.size() + " bytes ends with " + in.size() % 4
+						+ " bytes that are not a whole amount");
+			}
+			long[] bounds = split(in);
+			int chunks = bounds.length - 1;
+
+			// first pass: how many result bytes each chunk writes
+			List<Future<Summary>> results = new ArrayList<>();
+			for (int c = 0; c < chunks; c++) {
+				long from = bounds[c];
+				long to = bounds[c + 1];
+				results.add(executor.submit(() -> processChunk(in, from, to, null, 0)));
+			}
+			long[] offsets = new long[chunks + 1];
+			for (int c = 0; c < chunks; c++) {
+				offsets[c + 1] = offsets[c] + get(results.get(c)).bytes;
+			}
+
+			// second pass: every chunk writes at its final offset
+			results.clear();
+			for (int c = 0; c < chunks; c++) {
+				long from = bounds[c];
+				long to = bounds[c + 1];
+				long offset = offsets[c];
+				results.add(executor.submit(() -> processChunk(in, from, to, out, offset)));
+			}
+			Summary total = new Summary(solver.size());
+			for (Future<Summary> result : results) {
+				total.add(get(result));
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate(OUT_BUFFER);
+			for (int i = 0; i < solver.size(); i++) {
+				putAscii(buffer, "TOTAL ");
+				putLong(buffer, solver.getDenomination(i));
+				buffer.put((byte) ' ');
+				putLong(buffer, total.notes[i]);
+				buffer.put((byte) '\n');
+			}
+			buffer.flip();
+			long position = offsets[chunks];
+			while (buffer.hasRemaining()) {
+				position += out.write(buffer, position);
+			}
+			return total;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static Summary get(Future<Summary> result) throws IOException, InterruptedException {
+		try {
+			return result.get();
+		} catch (ExecutionException e) {
+			throw new IOException("Chunk failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Splits the input into one chunk per thread (more for huge files). Text
+	 * chunks end on whitespace so no amount is cut in two, binary chunks on a
+	 * multiple of 4 bytes.
+	 */
+	private long[] split(FileChannel in) throws IOException {
+		long size = in.size();
+		int chunks = (int) Math.max(threads, (size + MAX_CHUNK - 1) / MAX_CHUNK);
+		long step = Math.max(1, size / chunks);
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(0L);
+		ByteBuffer probe = ByteBuffer.allocate(64);
+		for (int c = 1; c < chunks; c++) {
+			long bound = Math.max(bounds.get(bounds.size() - 1), c * step);
+			if (binary) {
+				bound -= bound % 4;
+			} else {
+				bound = nextWhitespace(in, bound, probe);
+			}
+			if (bound > bounds.get(bounds.size() - 1) && bound < size) {
+				bounds.add(bound);
+			}
+		}
+		bounds.add(size);
+		long[] result = new long[bounds.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+	private static long nextWhitespace(FileChannel in, long position, ByteBuffer probe) throws IOException {
+		long size = in.size();
+		while (position < size) {
+			probe.clear();
+			int read = in.read(probe, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (isWhitespace(probe.get(i))) {
+					return position + i;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * @param output the results are written at <code>offset</code>, or only
+	 *               counted when it is null
+	 */
+	private Summary processChunk(FileChannel in, long from, long to, FileChannel output, long offset)
+			throws IOException {
+		Summary summary = new Summary(solver.size());
+		int[] counts = new int[solver.size()];
+		ChunkWriter out = new ChunkWriter(output, offset, summary);
+		MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+		if (binary) {
+			while (mapped.remaining() >= 4) {
+				dispense(mapped.getInt(), counts, summary, out);
+			}
+		} else {
+			long amount = 0;
+			int start = -1;
+			while (mapped.hasRemaining()) {
+				byte b = mapped.get();
+				if (b >= '0' && b <= '9') {
+					if (start < 0) {
+						start = mapped.position() - 1;
+					}
+					// stays above the int range once it got there
+					amount = Math.min(amount * 10 + (b - '0'), Integer.MAX_VALUE + 1L);
+				} else if (isWhitespace(b)) {
+					if (start >= 0) {
+						dispense(amount, mapped, start, mapped.position() - 1, counts, summary, out);
+						amount = 0;
+						start = -1;
+					}
+				} else {
+					throw new IOException("Unexpected byte " + b + " at offset " + (from + mapped.position() - 1));
+				}
+			}
+			if (start >= 0) {
+				dispense(amount, mapped, start, mapped.position(), counts, summary, out);
+			}
+		}
+		out.flush();
+		return summary;
+	}
+
+	// a text amount, the digits are copied when it does not fit in an int
+	private void dispense(long amount, ByteBuffer text, int start, int end, int[] counts, Summary summary,
+			ChunkWriter out) throws IOException {
+		if (amount <= Integer.MAX_VALUE) {
+			dispense((int) amount, counts, summary, out);
+			return;
+		}
+		summary.requests++;
+		summary.declined++;
+		for (int p = start; p < end; p++) {
+			out.room(1).put(text.get(p));
+		}
+		out.room(3).put((byte) ' ').put((byte) '-').put((byte) '\n');
+	}
+
+	private void dispense(int amount, int[] counts, Summary summary, ChunkWriter out) throws IOException {
+		// room for the amount and one number per denomination
+		ByteBuffer buffer = out.room(12 * (counts.length + 2));
+		summary.requests++;
+		putLong(buffer, amount);
+		if (solver.solve(amount, counts)) {
+			for (int i = 0; i < counts.length; i++) {
+				summary.notes[i] += counts[i];
+				buffer.put((byte) ' ');
+				putLong(buffer, counts[i]);
+			}
+		} else {
+			summary.declined++;
+			buffer.put((byte) ' ').put((byte) '-');
+		}
+		buffer.put((byte) '\n');
+	}
+
+	/**
+	 * Reused buffer of one chunk's results, written at the chunk's offset in the
+	 * output or, in the first pass, only counted.
+	 */
+	private static final class ChunkWriter {
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(OUT_BUFFER);
+		private final FileChannel channel;
+		private final long offset;
+		private final Summary summary;
+
+		ChunkWriter(FileChannel channel, long offset, Summary summary) {
+			this.channel = channel;
+			this.offset = offset;
+			this.summary = summary;
+		}
+
+		// the buffer, flushed first if it has less than the given room left
+		ByteBuffer room(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+			return buffer;
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			if (channel == null) {
+				summary.bytes += buffer.remaining();
+			} else {
+				while (buffer.hasRemaining()) {
+					summary.bytes += channel.write(buffer, offset + summary.bytes);
+				}
+			}
+			buffer.clear();
+		}
+	}
+
+	private static void flush(ByteBuffer out, FileChannel channel) throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == '\n' || b == '\r' || b == ' ' || b == '\t' || b == ',';
+	}
+
+	// writes the decimal digits of a value without creating a String
+	private static void putLong(ByteBuffer out, long value) {
+		if (value < 0) {
+			// binary input may hold negative amounts, they are declined
+			out.put((byte) '-');
+			value = -value;
+		}
+		if (value < 10) {
+			out.put((byte) ('0' + value));
+			return;
+		}
+		int digits = 0;
+		for (long v = value; v != 0; v /= 10) {
+			digits++;
+		}
+		int end = out.position() + digits;
+		for (int p = end - 1; p >= out.position(); p--) {
+			out.put(p, (byte) ('0' + value % 10));
+			value /= 10;
+		}
+		out.position(end);
+	}
+
+	private static void putAscii(ByteBuffer out, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			out.put((byte) text.charAt(i));
+		}
+	}
+
+	private static void writeSample(Path file, int amounts) throws IOException {
+		Random random = new Random(42);
+		ByteBuffer buffer = ByteBuffer.allocate(OUT_BUFFER);
+		try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			for (int i = 0; i < amounts; i++) {
+				if (buffer.remaining() < 16) {
+					flush(buffer, out);
+				}
+				// mostly multiples of 10, a few amounts the ATM has to decline
+				putLong(buffer, random.nextInt(100) == 0 ? random.nextInt(1000) : (1 + random.nextInt(200)) * 10);
+				buffer.put((byte) '\n');
+			}
+			flush(buffer, out);
+		}
+	}
+}
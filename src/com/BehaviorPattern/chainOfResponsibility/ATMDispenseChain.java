@@ -3,6 +3,8 @@ package com.BehaviorPattern.chainOfResponsibility;
 
 import java.util.Scanner;
 
+import com.ConcurrencyPattern.AsyncOutput;
+
 //https://www.journaldev.com/1617/chain-of-responsibility-design-pattern-in-java
 /**
  * Chain of responsibility pattern is used to achieve loose coupling in software
@@ -56,7 +58,7 @@ class Dollar50Dispenser implements DispenseChain {
 		if (cur.getAmount() >= 50) {
 			int num = cur.getAmount() / 50;
 			int remainder = cur.getAmount() % 50;
-			System.out.println("Dispensing " + num + " 50$ note");
+			AsyncOutput.DEFAULT.line().append("Dispensing ").append(num).append(" 50$ note").println();
 			if (remainder != 0)
 				this.chain.dispense(new Currency(remainder));
 		} else {
@@ -80,7 +82,7 @@ class Dollar20Dispenser implements DispenseChain {
 		if (cur.getAmount() >= 20) {
 			int num = cur.getAmount() / 20;
 			int remainder = cur.getAmount() % 20;
-			System.out.println("Dispensing " + num + " 20$ note");
+			AsyncOutput.DEFAULT.line().append("Dispensing ").append(num).append(" 20$ note").println();
 			if (remainder != 0)
 				this.chain.dispense(new Currency(remainder));
 		} else {
@@ -104,7 +106,7 @@ class Dollar10Dispenser implements DispenseChain {
 		if (cur.getAmount() >= 10) {
 			int num = cur.getAmount() / 10;
 			int remainder = cur.getAmount() % 10;
-			System.out.println("Dispensing " + num + " 10$ note");
+			AsyncOutput.DEFAULT.line().append("Dispensing ").append(num).append(" 10$ note").println();
 			if (remainder != 0)
 				this.chain.dispense(new Currency(remainder));
 		} else {
@@ -116,6 +118,9 @@ class Dollar10Dispenser implements DispenseChain {
 
 public class ATMDispenseChain {
 
+	// used to validate amounts before they enter the chain
+	private static final DenominationSolver SOLVER = new OptimalDenominationSolver(1000, 50, 20, 10);
+
 	private DispenseChain c1;
 
 	public ATMDispenseChain() {
@@ -129,15 +134,46 @@ public class ATMDispenseChain {
 		c2.setNextChain(c3);
 	}
 
+	/**
+	 * @param tableDriven when true the 50/20/10 chain is flattened into a
+	 *                    single {@link TableDispenseChain} instead of one
+	 *                    dispenser per note
+	 */
+	public ATMDispenseChain(boolean tableDriven) {
+		this();
+		if (tableDriven) {
+			this.c1 = new TableDispenseChain(50, 20, 10);
+		}
+	}
+
+	/**
+	 * Dispenses from a finite set of cassettes, safe to share between
+	 * concurrent withdrawals. Amounts the notes left cannot pay are declined.
+	 */
+	public ATMDispenseChain(CassetteInventory inventory) {
+		this();
+		this.c1 = inventory;
+	}
+
+	public void dispense(Currency cur) {
+		this.c1.dispense(cur);
+	}
+
 	public static void main(String[] args) {
-		ATMDispenseChain atmDispenser = new ATMDispenseChain();
+		String mode = args.length > 0 ? args[0] : "";
+		ATMDispenseChain atmDispenser = "cassettes".equals(mode)
+				? new ATMDispenseChain(new CassetteInventory(new TableDispenseChain(50, 20, 10), 20, 50, 100))
+				: new ATMDispenseChain("table".equals(mode));
+		// one Scanner for the whole session, use ATMBatchDispense to replay files
+		Scanner input = new Scanner(System.in);
 		while (true) {
 			int amount = 0;
+			// the dispensers print through AsyncOutput, let it catch up first
+			AsyncOutput.DEFAULT.flush();
 			System.out.println("Enter amount to dispense");
-			Scanner input = new Scanner(System.in);
 			amount = input.nextInt();
-			if (amount % 10 != 0) {
-				System.out.println("Amount should be in multiple of 10s.");
+			if (!SOLVER.solve(amount, new int[SOLVER.size()])) {
+				System.out.println("Amount cannot be dispensed with 50$, 20$ and 10$ notes.");
 				return;
 			}
 			// process the request
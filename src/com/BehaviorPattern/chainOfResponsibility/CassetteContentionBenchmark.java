@@ -0,0 +1,97 @@
+package com.BehaviorPattern.chainOfResponsibility;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Same search as {@link CassetteInventory} guarded by a single lock,
+ * used as the baseline in {@link CassetteContentionBenchmark}.
+ *
+ * @author nitin
+ *
+ */
+class SynchronizedCassetteInventory {
+
+	private final TableDispenseChain table;
+	private final int[] notes;
+
+	public SynchronizedCassetteInventory(TableDispenseChain table, int... initialNotes) {
+		this.table = table;
+		this.notes = initialNotes.clone();
+	}
+
+	public synchronized boolean dispense(int amount, int[] outCounts) {
+		if (!CassetteInventory.allocate(table, amount, notes, outCounts)) {
+			return false;
+		}
+		for (int i = 0; i < table.size(); i++) {
+			notes[i] -= outCounts[i];
+		}
+		return true;
+	}
+}
+
+/**
+ * Runs the same withdrawal mix from 1 up to N threads against the lock-free
+ * and the synchronized inventory and prints the throughput of each.
+ */
+public class CassetteContentionBenchmark {
+
+	private static final int WITHDRAWALS_PER_THREAD = 2_000_000;
+
+	interface Withdrawal {
+		boolean dispense(int amount, int[] outCounts);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		TableDispenseChain table = new TableDispenseChain(50, 20, 10);
+
+		// small demo: with one 50 and no 10s left, 60 is paid with three 20s
+		CassetteInventory small = new CassetteInventory(table, 3, 6, 1);
+		int[] counts = new int[table.size()];
+		for (int amount : new int[] { 120, 10, 60, 500 }) {
+			boolean ok = small.dispense(amount, counts);
+			System.out.println(amount + " -> " + (ok ? java.util.Arrays.toString(counts) : "declined"));
+		}
+
+		for (int threads = 1; threads <= maxThreads; threads = threads == maxThreads ? threads + 1
+				: Math.min(threads * 2, maxThreads)) {
+			int supply = Integer.MAX_VALUE / 2;
+			CassetteInventory lockFree = new CassetteInventory(table, supply, supply, supply);
+			SynchronizedCassetteInventory locked = new SynchronizedCassetteInventory(table, supply, supply, supply);
+			double lockFreeOps = run(threads, lockFree::dispense);
+			double lockedOps = run(threads, locked::dispense);
+			System.out.printf("%2d threads: lock-free %,.0f ops/s, synchronized %,.0f ops/s%n", threads, lockFreeOps,
+					lockedOps);
+		}
+	}
+
+	private static double run(int threads, Withdrawal withdrawal) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new Thread(() -> {
+				int[] counts = new int[3];
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				for (int i = 0; i < WITHDRAWALS_PER_THREAD; i++) {
+					withdrawal.dispense((1 + random.nextInt(50)) * 10, counts);
+				}
+			});
+			workers[t].start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - begin;
+		return (double) threads * WITHDRAWALS_PER_THREAD * 1_000_000_000L / elapsed;
+	}
+}
@@ -0,0 +1,221 @@
+package com.BehaviorPattern.chainOfResponsibility;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.ConcurrencyPattern.AsyncOutput;
+
+/**
+ * Finite note supply shared by many concurrent withdrawals. The notes of every
+ * denomination are split over a few striped counters which are only ever
+ * changed with compare-and-set. A thread takes notes from its home stripe first
+ * and only visits the other stripes when that one runs dry, so concurrent
+ * withdrawals rarely touch the same counter.
+ *
+ * A withdrawal first looks for a breakdown the notes left can pay, trying the
+ * largest notes first and backing off to smaller ones, so 60 is paid with
+ * three 20s when the 10s are gone and only one 50 is left. Then it reserves
+ * the notes of that breakdown. If another withdrawal took some of them in the
+ * meantime, everything reserved is put back and the search runs again on the
+ * new counts, so an amount is either fully dispensed or not at all.
+ *
+ * As the first link of a {@link DispenseChain} it lets
+ * {@link ATMDispenseChain} serve many withdrawals at once from one set of
+ * cassettes.
+ *
+ * @author nitin
+ *
+ */
+class CassetteInventory implements DispenseChain {
+
+	// counters are spread 16 ints (64 bytes) apart so each one sits on its own
+	// cache line
+	private static final int PAD = 16;
+
+	// search steps before an amount is declined, far more than any ATM amount
+	// needs with a handful of denominations
+	private static final int SEARCH_BUDGET = 100_000;
+
+	private final TableDispenseChain table;
+	private final int stripes;
+	private final AtomicIntegerArray notes;
+
+	// asked when the notes left cannot pay an amount
+	private DispenseChain chain;
+
+	public CassetteInventory(TableDispenseChain table, int... initialNotes) {
+		this(table, initialNotes, Runtime.getRuntime().availableProcessors());
+	}
+
+	public CassetteInventory(TableDispenseChain table, int[] initialNotes, int stripes) {
+		if (initialNotes.length != table.size()) {
+			throw new IllegalArgumentException("Expected " + table.size() + " note counts");
+		}
+		if (stripes < 1) {
+			throw new IllegalArgumentException("At least one stripe is required");
+		}
+		this.table = table;
+		this.stripes = stripes;
+		this.notes = new AtomicIntegerArray(table.size() * stripes * PAD);
+		for (int i = 0; i < initialNotes.length; i++) {
+			for (int s = 0; s < stripes; s++) {
+				// first stripe gets what does not divide evenly
+				int share = initialNotes[i] / stripes + (s == 0 ? initialNotes[i] % stripes : 0);
+				this.notes.set(slot(i, s), share);
+			}
+		}
+	}
+
+	private int slot(int index, int stripe) {
+		return (index * stripes + stripe) * PAD;
+	}
+
+	private int homeStripe() {
+		return (int) (Thread.currentThread().getId() % stripes);
+	}
+
+	public TableDispenseChain getTable() {
+		return table;
+	}
+
+	public int available(int index) {
+		int sum = 0;
+		for (int s = 0; s < stripes; s++) {
+			sum += notes.get(slot(index, s));
+		}
+		return sum;
+	}
+
+	public void refill(int index, int count) {
+		notes.addAndGet(slot(index, homeStripe()), count);
+	}
+
+	/**
+	 * @param amount    amount to dispense
+	 * @param outCounts receives the notes taken per denomination
+	 * @return true if the whole amount was reserved, false if nothing was taken
+	 */
+	public boolean dispense(int amount, int[] outCounts) {
+		int home = homeStripe();
+		int[] available = new int[table.size()];
+		while (true) {
+			for (int i = 0; i < available.length; i++) {
+				available[i] = available(i);
+			}
+			if (!allocate(table, amount, available, outCounts)) {
+				return false;
+			}
+			int reserved = 0;
+			int taken = 0;
+			while (reserved < available.length) {
+				taken = outCounts[reserved] == 0 ? 0 : take(reserved, home, outCounts[reserved]);
+				if (taken < outCounts[reserved]) {
+					break;
+				}
+				reserved++;
+			}
+			if (reserved == available.length) {
+				return true;
+			}
+			// another withdrawal got there first, put the notes back and look again
+			if (taken != 0) {
+				notes.addAndGet(slot(reserved, home), taken);
+			}
+			for (int i = 0; i < reserved; i++) {
+				if (outCounts[i] != 0) {
+					notes.addAndGet(slot(i, home), outCounts[i]);
+				}
+			}
+		}
+	}
+
+	private int take(int index, int home, int wanted) {
+		int taken = 0;
+		for (int n = 0; n < stripes && taken < wanted; n++) {
+			int slot = slot(index, (home + n) % stripes);
+			while (true) {
+				int current = notes.get(slot);
+				int part = Math.min(current, wanted - taken);
+				if (part == 0 || notes.compareAndSet(slot, current, current - part)) {
+					taken += part;
+					break;
+				}
+			}
+		}
+		return taken;
+	}
+
+	/**
+	 * Finds a breakdown of <code>amount</code> that uses at most
+	 * <code>available[i]</code> notes of every denomination, largest notes
+	 * first.
+	 *
+	 * @return false if there is none, or none was found within the search budget
+	 */
+	static boolean allocate(TableDispenseChain table, int amount, int[] available, int[] outCounts) {
+		if (amount < 0) {
+			return false;
+		}
+		int[] steps = { SEARCH_BUDGET };
+		if (search(table, 0, amount, available, outCounts, steps)) {
+			return true;
+		}
+		Arrays.fill(outCounts, 0, table.size(), 0);
+		return false;
+	}
+
+	private static boolean search(TableDispenseChain table, int index, int remainder, int[] available,
+			int[] outCounts, int[] steps) {
+		if (remainder == 0) {
+			Arrays.fill(outCounts, index, table.size(), 0);
+			return true;
+		}
+		if (index == table.size() || --steps[0] < 0) {
+			return false;
+		}
+		// give up early when all the notes left together are not enough
+		long capacity = 0;
+		for (int i = index; i < table.size(); i++) {
+			capacity += (long) available[i] * table.getDenomination(i);
+		}
+		if (capacity < remainder) {
+			return false;
+		}
+		int note = table.getDenomination(index);
+		int most = Math.min(available[index], remainder / note);
+		if (index == table.size() - 1) {
+			outCounts[index] = most;
+			return remainder == most * note;
+		}
+		for (int count = most; count >= 0; count--) {
+			outCounts[index] = count;
+			if (search(table, index + 1, remainder - count * note, available, outCounts, steps)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void setNextChain(DispenseChain nextChain) {
+		this.chain = nextChain;
+	}
+
+	@Override
+	public void dispense(Currency cur) {
+		int[] counts = new int[table.size()];
+		if (dispense(cur.getAmount(), counts)) {
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] != 0) {
+					AsyncOutput.DEFAULT.line().append("Dispensing ").append(counts[i]).append(' ')
+							.append(table.getDenomination(i)).append("$ note").println();
+				}
+			}
+		} else if (this.chain != null) {
+			this.chain.dispense(cur);
+		} else {
+			AsyncOutput.DEFAULT.line().append("Not enough notes left to dispense ").append(cur.getAmount())
+					.append('$').println();
+		}
+	}
+}
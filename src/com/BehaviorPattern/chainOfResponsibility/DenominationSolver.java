@@ -0,0 +1,24 @@
+package com.BehaviorPattern.chainOfResponsibility;
+
+/**
+ * Strategy that turns an amount into a note breakdown for a fixed set of
+ * denominations. {@link TableDispenseChain} is the greedy implementation,
+ * {@link OptimalDenominationSolver} always returns the fewest notes.
+ *
+ * @author nitin
+ *
+ */
+interface DenominationSolver {
+
+	int size();
+
+	int getDenomination(int index);
+
+	/**
+	 * @param amount    amount to dispense
+	 * @param outCounts receives the notes per denomination, in the order of
+	 *                  {@link #getDenomination(int)}
+	 * @return false if the amount cannot be made from the denominations
+	 */
+	boolean solve(int amount, int[] outCounts);
+}
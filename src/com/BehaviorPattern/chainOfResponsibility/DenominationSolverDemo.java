@@ -0,0 +1,46 @@
+package com.BehaviorPattern.chainOfResponsibility;
+
+/**
+ * Compares the greedy {@link TableDispenseChain} with the
+ * {@link OptimalDenominationSolver} and measures table lookups.
+ *
+ * @author nitin
+ *
+ */
+public class DenominationSolverDemo {
+
+	public static void main(String[] args) {
+		print(new TableDispenseChain(50, 20), 60);
+		print(new OptimalDenominationSolver(1000, 50, 20), 60);
+		print(new OptimalDenominationSolver(1000, 50, 20), 30);
+		print(new OptimalDenominationSolver(1000, 25, 10, 1), 30);
+		print(new OptimalDenominationSolver(1000, 50, 20, 10), 123_450);
+
+		OptimalDenominationSolver solver = new OptimalDenominationSolver(100_000, 500, 200, 100, 50, 20, 10);
+		int[] counts = new int[solver.size()];
+		int requests = 10_000_000;
+		long start = System.nanoTime();
+		long notes = 0;
+		for (int i = 0; i < requests; i++) {
+			if (solver.solve((i % 20_000) * 10, counts)) {
+				notes += counts[0];
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.printf("%d lookups in %.1f ns/op (checksum %d)%n", requests, (double) elapsed / requests, notes);
+	}
+
+	private static void print(DenominationSolver solver, int amount) {
+		int[] counts = new int[solver.size()];
+		StringBuilder line = new StringBuilder(solver.getClass().getSimpleName()).append(' ').append(amount)
+				.append(" ->");
+		if (!solver.solve(amount, counts)) {
+			line.append(" cannot be dispensed");
+		} else {
+			for (int i = 0; i < counts.length; i++) {
+				line.append(' ').append(counts[i]).append(" x ").append(solver.getDenomination(i)).append('$');
+			}
+		}
+		System.out.println(line);
+	}
+}
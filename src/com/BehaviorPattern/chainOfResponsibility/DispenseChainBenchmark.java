@@ -0,0 +1,47 @@
+package com.BehaviorPattern.chainOfResponsibility;
+
+import com.ConcurrencyPattern.AsyncOutput;
+import com.ConcurrencyPattern.OutputSink;
+
+/**
+ * Compares the linked {@link DispenseChain} of {@link ATMDispenseChain} with
+ * {@link TableDispenseChain}. Console output of the linked chain is discarded
+ * so only the dispensing itself is measured.
+ *
+ * @author nitin
+ *
+ */
+public class DispenseChainBenchmark {
+
+	private static final int REQUESTS = 1_000_000;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		int[] amounts = new int[REQUESTS];
+		java.util.Random random = new java.util.Random(42);
+		for (int i = 0; i < amounts.length; i++) {
+			amounts[i] = (1 + random.nextInt(200)) * 10;
+		}
+
+		ATMDispenseChain linked = new ATMDispenseChain();
+		TableDispenseChain table = new TableDispenseChain(50, 20, 10);
+		int[] counts = new int[amounts.length * table.size()];
+
+		OutputSink stdout = AsyncOutput.DEFAULT.redirect(OutputSink.discard());
+		for (int round = 1; round <= ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int amount : amounts) {
+				linked.dispense(new Currency(amount));
+			}
+			long linkedNs = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int failed = table.dispenseAll(amounts, counts);
+			long tableNs = System.nanoTime() - start;
+
+			System.out.printf("round %d: linked chain %.1f ns/op, table %.1f ns/op (failed=%d)%n", round,
+					(double) linkedNs / REQUESTS, (double) tableNs / REQUESTS, failed);
+		}
+		AsyncOutput.DEFAULT.redirect(stdout);
+	}
+}
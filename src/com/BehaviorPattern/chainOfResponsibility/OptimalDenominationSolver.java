@@ -0,0 +1,122 @@
+package com.BehaviorPattern.chainOfResponsibility;
+
+import java.util.Arrays;
+
+/**
+ * Dynamic programming solver for any set of denominations. The fewest-notes
+ * breakdown of every amount up to <code>maxAmount</code> is computed once into
+ * a dense table, so answering a request is a plain array copy.
+ *
+ * Amounts above the table are reduced by the largest note first. An optimal
+ * breakdown never holds <code>L</code> or more smaller notes (with
+ * <code>L</code> the largest note), as some of them would add up to a multiple
+ * of <code>L</code> that fewer large notes could replace. Their value is
+ * therefore below <code>L * L</code>, which is why the table always covers at
+ * least that much and the reduced residue gives the exact answer.
+ *
+ * @author nitin
+ *
+ */
+class OptimalDenominationSolver implements DenominationSolver {
+
+	private static final int UNREACHABLE = -1;
+	// largest array the VM is sure to allocate
+	private static final long MAX_TABLE_ENTRIES = Integer.MAX_VALUE - 8;
+
+	private final int[] denominations;
+	private final int maxAmount;
+	private final int[] minNotes;
+	// notes per denomination for every amount, row a starts at a * size()
+	private final int[] breakdown;
+
+	public OptimalDenominationSolver(int maxAmount, int... denominations) {
+		// reuse the validation and largest-first ordering of the table chain
+		TableDispenseChain ordered = new TableDispenseChain(denominations);
+		this.denominations = new int[ordered.size()];
+		for (int i = 0; i < this.denominations.length; i++) {
+			this.denominations[i] = ordered.getDenomination(i);
+		}
+		int largest = this.denominations[0];
+		int width = this.denominations.length;
+		long tableAmount = Math.max(maxAmount, (long) largest * largest);
+		if (maxAmount < 0 || (tableAmount + 1) * width > MAX_TABLE_ENTRIES) {
+			throw new IllegalArgumentException(
+					"Answer table for amounts up to " + tableAmount + " with " + width + " denominations is too large");
+		}
+		this.maxAmount = (int) tableAmount;
+
+		this.minNotes = new int[this.maxAmount + 1];
+		this.breakdown = new int[(this.maxAmount + 1) * width];
+		Arrays.fill(minNotes, UNREACHABLE);
+		minNotes[0] = 0;
+		for (int amount = 1; amount <= this.maxAmount; amount++) {
+			int best = UNREACHABLE;
+			int bestNote = -1;
+			for (int i = 0; i < width; i++) {
+				int rest = amount - this.denominations[i];
+				if (rest >= 0 && minNotes[rest] != UNREACHABLE && (best == UNREACHABLE || minNotes[rest] + 1 < best)) {
+					best = minNotes[rest] + 1;
+					bestNote = i;
+				}
+			}
+			if (best != UNREACHABLE) {
+				minNotes[amount] = best;
+				int rest = amount - this.denominations[bestNote];
+				System.arraycopy(breakdown, rest * width, breakdown, amount * width, width);
+				breakdown[amount * width + bestNote]++;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return denominations.length;
+	}
+
+	@Override
+	public int getDenomination(int index) {
+		return denominations[index];
+	}
+
+	public int getMaxAmount() {
+		return maxAmount;
+	}
+
+	/**
+	 * @return the fewest notes needed for the amount, or -1 if it cannot be
+	 *         dispensed
+	 */
+	public int minNotes(int amount) {
+		if (amount < 0) {
+			return UNREACHABLE;
+		}
+		int extra = extraLargest(amount);
+		int residue = amount - extra * denominations[0];
+		return minNotes[residue] == UNREACHABLE ? UNREACHABLE : minNotes[residue] + extra;
+	}
+
+	@Override
+	public boolean solve(int amount, int[] outCounts) {
+		if (amount < 0) {
+			return false;
+		}
+		int extra = extraLargest(amount);
+		int residue = amount - extra * denominations[0];
+		if (minNotes[residue] == UNREACHABLE) {
+			return false;
+		}
+		int width = denominations.length;
+		System.arraycopy(breakdown, residue * width, outCounts, 0, width);
+		outCounts[0] += extra;
+		return true;
+	}
+
+	// largest notes to take off an amount above the table so the rest is in it
+	private int extraLargest(int amount) {
+		if (amount <= maxAmount) {
+			return 0;
+		}
+		int largest = denominations[0];
+		return (int) (((long) amount - maxAmount + largest - 1) / largest);
+	}
+}
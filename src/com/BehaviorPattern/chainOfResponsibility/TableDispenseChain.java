@@ -0,0 +1,132 @@
+package com.BehaviorPattern.chainOfResponsibility;
+
+import java.util.Arrays;
+
+import com.ConcurrencyPattern.AsyncOutput;
+
+/**
+ * Table driven variant of the dispense chain. Instead of linking one dispenser
+ * object per note and passing a new {@link Currency} down the chain, the chain
+ * is flattened once into an array of denominations (largest first) and the
+ * note breakdown is written into a caller supplied <code>int[]</code>.
+ *
+ * The hot path ({@link #dispense(int, int[])} and
+ * {@link #dispenseAll(int[], int[])}) does not allocate and does not print.
+ *
+ * @author nitin
+ *
+ */
+class TableDispenseChain implements DispenseChain, DenominationSolver {
+
+	private final int[] denominations;
+
+	// kept only so the table can still be plugged into a linked chain
+	private DispenseChain chain;
+
+	public TableDispenseChain(int... denominations) {
+		if (denominations.length == 0) {
+			throw new IllegalArgumentException("At least one denomination is required");
+		}
+		int[] sorted = denominations.clone();
+		Arrays.sort(sorted);
+		for (int i = 0; i < sorted.length; i++) {
+			if (sorted[i] <= 0 || (i > 0 && sorted[i] == sorted[i - 1])) {
+				throw new IllegalArgumentException("Denominations must be positive and unique");
+			}
+		}
+		// largest note first, same order as the linked chain 50 -> 20 -> 10
+		this.denominations = new int[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			this.denominations[i] = sorted[sorted.length - 1 - i];
+		}
+	}
+
+	@Override
+	public int size() {
+		return denominations.length;
+	}
+
+	@Override
+	public int getDenomination(int index) {
+		return denominations[index];
+	}
+
+	/**
+	 * Computes the note breakdown for one amount.
+	 *
+	 * @param amount    amount to dispense
+	 * @param outCounts receives the number of notes per denomination, in the
+	 *                  order of {@link #getDenomination(int)}
+	 * @return the part of the amount that could not be dispensed (0 on success,
+	 *         the amount itself when it is negative)
+	 */
+	public int dispense(int amount, int[] outCounts) {
+		return dispense(amount, outCounts, 0);
+	}
+
+	private int dispense(int amount, int[] outCounts, int offset) {
+		if (amount < 0) {
+			Arrays.fill(outCounts, offset, offset + denominations.length, 0);
+			return amount;
+		}
+		int remainder = amount;
+		for (int i = 0; i < denominations.length; i++) {
+			int note = denominations[i];
+			int num = remainder / note;
+			outCounts[offset + i] = num;
+			remainder -= num * note;
+		}
+		return remainder;
+	}
+
+	/**
+	 * Greedy breakdown, only optimal for canonical note sets such as 50/20/10.
+	 */
+	@Override
+	public boolean solve(int amount, int[] outCounts) {
+		return amount >= 0 && dispense(amount, outCounts) == 0;
+	}
+
+	/**
+	 * Bulk version of {@link #dispense(int, int[])}. The counts of request
+	 * <code>i</code> are written to
+	 * <code>outCounts[i * size() .. i * size() + size() - 1]</code>.
+	 *
+	 * @return number of amounts that could not be fully dispensed, negative
+	 *         amounts included
+	 */
+	public int dispenseAll(int[] amounts, int[] outCounts) {
+		int width = denominations.length;
+		long required = (long) amounts.length * width;
+		if (outCounts.length < required) {
+			throw new IllegalArgumentException("outCounts must hold " + required + " entries");
+		}
+		int failed = 0;
+		for (int i = 0; i < amounts.length; i++) {
+			if (dispense(amounts[i], outCounts, i * width) != 0) {
+				failed++;
+			}
+		}
+		return failed;
+	}
+
+	@Override
+	public void setNextChain(DispenseChain nextChain) {
+		this.chain = nextChain;
+	}
+
+	@Override
+	public void dispense(Currency cur) {
+		int[] counts = new int[denominations.length];
+		int remainder = dispense(cur.getAmount(), counts);
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0) {
+				AsyncOutput.DEFAULT.line().append("Dispensing ").append(counts[i]).append(' ').append(denominations[i])
+						.append("$ note").println();
+			}
+		}
+		if (remainder != 0 && this.chain != null) {
+			this.chain.dispense(new Currency(remainder));
+		}
+	}
+}
@@ -1,15 +1,25 @@
 package com.BehaviorPattern.observer;
 
-class CricketData {
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import com.ConcurrencyPattern.AsyncOutput;
+import com.ConcurrencyPattern.RingPublisher;
+
+// Publishes the score to any number of subscribers, each at its own pace
+class CricketData extends RingPublisher<ScoreEvent> {
 	int runs, wickets;
 	float overs;
-	CurrentScoreDisplay currentScoreDisplay;
-	AverageScoreDisplay averageScoreDisplay;
 
 	// Constructor
-	public CricketData(CurrentScoreDisplay currentScoreDisplay, AverageScoreDisplay averageScoreDisplay) {
-		this.currentScoreDisplay = currentScoreDisplay;
-		this.averageScoreDisplay = averageScoreDisplay;
+	public CricketData() {
+		this(ForkJoinPool.commonPool(), 1 << 10, 64);
+	}
+
+	public CricketData(Executor executor, int capacity, int batchSize) {
+		super(executor, capacity, batchSize);
 	}
 
 	// Get latest runs from stadium
@@ -30,24 +40,53 @@ class CricketData {
 		return (float) 10.2;
 	}
 
-	// This method is used update displays when data changes
+	// This method is used to publish the score when data changes
 	public void dataChanged() {
 		// get latest data
 		runs = getLatestRuns();
 		wickets = getLatestWickets();
 		overs = getLatestOvers();
 
-		currentScoreDisplay.update(runs, wickets, overs);
-		averageScoreDisplay.update(runs, wickets, overs);
+		publish(runs, wickets, overs);
+	}
+
+	public void publish(int runs, int wickets, float overs) {
+		submit(new ScoreEvent(runs, wickets, overs));
+	}
+}
+
+// Subscriber that shows every score it is sent
+abstract class ScoreDisplay implements Flow.Subscriber<ScoreEvent> {
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		subscription.request(Long.MAX_VALUE);
+	}
+
+	@Override
+	public void onNext(ScoreEvent score) {
+		update(score.runs, score.wickets, score.overs);
+	}
+
+	@Override
+	public void onError(Throwable error) {
+		AsyncOutput.DEFAULT.line().append("Score feed failed: ").append(String.valueOf(error)).println();
 	}
+
+	@Override
+	public void onComplete() {
+	}
+
+	public abstract void update(int runs, int wickets, float overs);
 }
 
 // A class to display average score. Data of this class is
 // updated by CricketData
-class AverageScoreDisplay {
+class AverageScoreDisplay extends ScoreDisplay {
 	private float runRate;
 	private int predictedScore;
 
+	@Override
 	public void update(int runs, int wickets, float overs) {
 		this.runRate = (float) runs / overs;
 		this.predictedScore = (int) (this.runRate * 50);
@@ -55,17 +94,18 @@ class AverageScoreDisplay {
 	}
 
 	public void display() {
-		System.out
-				.println("\nAverage Score Display:\n" + "Run Rate: " + runRate + "\nPredictedScore: " + predictedScore);
+		AsyncOutput.DEFAULT.line().append("\nAverage Score Display:\nRun Rate: ").append(runRate)
+				.append("\nPredictedScore: ").append(predictedScore).println();
 	}
 }
 
 // A class to display score. Data of this class is
 // updated by CricketData
-class CurrentScoreDisplay {
+class CurrentScoreDisplay extends ScoreDisplay {
 	private int runs, wickets;
 	private float overs;
 
+	@Override
 	public void update(int runs, int wickets, float overs) {
 		this.runs = runs;
 		this.wickets = wickets;
@@ -74,8 +114,8 @@ class CurrentScoreDisplay {
 	}
 
 	public void display() {
-		System.out.println(
-				"\nCurrent Score Display: \n" + "Runs: " + runs + "\nWickets:" + wickets + "\nOvers: " + overs);
+		AsyncOutput.DEFAULT.line().append("\nCurrent Score Display: \nRuns: ").append(runs).append("\nWickets:")
+				.append(wickets).append("\nOvers: ").append(overs).println();
 	}
 }
 
@@ -86,11 +126,17 @@ public class Main {
 		AverageScoreDisplay averageScoreDisplay = new AverageScoreDisplay();
 		CurrentScoreDisplay currentScoreDisplay = new CurrentScoreDisplay();
 
-		// Pass the displays to Cricket data
-		CricketData cricketData = new CricketData(currentScoreDisplay, averageScoreDisplay);
+		// Subscribe the displays to Cricket data, delivering on this thread so
+		// the displays are updated in the order they subscribed
+		CricketData cricketData = new CricketData(Runnable::run, 1 << 10, 64);
+		cricketData.subscribe(currentScoreDisplay);
+		cricketData.subscribe(averageScoreDisplay);
 
 		// In real app you would have some logic to call this
 		// function when data changes
 		cricketData.dataChanged();
+
+		cricketData.close();
+		cricketData.awaitCompletion(1, TimeUnit.SECONDS);
 	}
 }
@@ -0,0 +1,298 @@
+package com.BehaviorPattern.observer;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link Subject} that can be used from many threads. Observers are kept in
+ * a copy-on-write array replaced with compare-and-set, so observers can
+ * attach or detach at any time, also from within <code>update</code>, and a
+ * notification goes to the observers attached when it started.
+ *
+ * <code>setState</code> does not call the observers, every observer gets the
+ * new state through its own delivery, which runs on the executor and calls
+ * {@link Observer#update(int)} for one state at a time. Without conflation
+ * every state is delivered in order. With conflation a delivery only holds the
+ * newest state not yet seen, so an observer that falls behind skips the
+ * intermediate states instead of building up a backlog.
+ *
+ * An observer that throws is counted, it keeps getting notifications.
+ *
+ * @author nitin
+ *
+ */
+class ConcurrentSubject extends Subject {
+
+	private static final long EMPTY = -1L;
+	private static final int DRAIN_BATCH = 64;
+
+	private final class Delivery implements Runnable {
+		private final Observer observer;
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		// conflation: the newest undelivered state as an unsigned int, or EMPTY
+		private final AtomicLong latest = new AtomicLong(EMPTY);
+		// otherwise: every undelivered state
+		private final ConcurrentLinkedQueue<Integer> states = new ConcurrentLinkedQueue<>();
+
+		Delivery(Observer observer) {
+			this.observer = observer;
+		}
+
+		void offer(int state) {
+			if (conflate) {
+				if (latest.getAndSet(state & 0xffffffffL) != EMPTY) {
+					conflated.increment();
+				}
+			} else {
+				states.add(state);
+			}
+			schedule();
+		}
+
+		private void schedule() {
+			if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					// the executor is shutting down, the notification is dropped
+					scheduled.set(false);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			if (conflate) {
+				long state = latest.getAndSet(EMPTY);
+				if (state != EMPTY) {
+					deliver((int) state);
+				}
+			} else {
+				for (int i = 0; i < DRAIN_BATCH; i++) {
+					Integer state = states.poll();
+					if (state == null) {
+						break;
+					}
+					deliver(state);
+				}
+			}
+			scheduled.set(false);
+			// a state may have arrived after the last poll
+			if (conflate ? latest.get() != EMPTY : !states.isEmpty()) {
+				schedule();
+			}
+		}
+
+		private void deliver(int state) {
+			try {
+				observer.update(state);
+			} catch (RuntimeException e) {
+				failed.incrementAndGet();
+			}
+			delivered.increment();
+		}
+	}
+
+	private static final Delivery[] NONE = new Delivery[0];
+
+	private final AtomicReference<Delivery[]> deliveries = new AtomicReference<>(NONE);
+	private final ExecutorService executor;
+	private final boolean conflate;
+	private volatile int state;
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder conflated = new LongAdder();
+	private final AtomicLong failed = new AtomicLong();
+
+	public ConcurrentSubject(ExecutorService executor, boolean conflate) {
+		this.executor = executor;
+		this.conflate = conflate;
+	}
+
+	@Override
+	public int getState() {
+		return state;
+	}
+
+	@Override
+	public void setState(int state) {
+		this.state = state;
+		notify(state);
+	}
+
+	@Override
+	public void attach(Observer observer) {
+		Delivery delivery = new Delivery(observer);
+		Delivery[] current;
+		Delivery[] next;
+		do {
+			current = deliveries.get();
+			next = Arrays.copyOf(current, current.length + 1);
+			next[current.length] = delivery;
+		} while (!deliveries.compareAndSet(current, next));
+	}
+
+	public void detach(Observer observer) {
+		Delivery[] current;
+		Delivery[] next;
+		do {
+			current = deliveries.get();
+			int index = -1;
+			for (int i = 0; i < current.length; i++) {
+				if (current[i].observer == observer) {
+					index = i;
+					break;
+				}
+			}
+			if (index < 0) {
+				return;
+			}
+			next = new Delivery[current.length - 1];
+			System.arraycopy(current, 0, next, 0, index);
+			System.arraycopy(current, index + 1, next, index, next.length - index);
+		} while (!deliveries.compareAndSet(current, next));
+	}
+
+	@Override
+	public void notifyAllObservers() {
+		notify(state);
+	}
+
+	private void notify(int state) {
+		for (Delivery delivery : deliveries.get()) {
+			delivery.offer(state);
+		}
+	}
+
+	public int getObserverCount() {
+		return deliveries.get().length;
+	}
+
+	public long getDeliveredCount() {
+		return delivered.sum();
+	}
+
+	/** States an observer never saw because a newer one replaced them. */
+	public long getConflatedCount() {
+		return conflated.sum();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+}
+
+/**
+ * 10,000 observers on a {@link Subject} and on a {@link ConcurrentSubject}
+ * with and without conflation, while one thread calls <code>setState</code>
+ * as fast as it can. Reports state changes per second on the calling thread,
+ * deliveries per second and the time until every observer saw the final
+ * state. One observer in a thousand is slow. Also shows what happens when an
+ * observer attaches another one during a notification.
+ */
+public class ObserverNotificationBenchmark {
+
+	private static final int OBSERVERS = 10_000;
+	private static final int STATES = 2_000;
+	private static final long SLOW_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+	static class CountingObserver extends Observer {
+		private final long delayNanos;
+		volatile int last = -1;
+
+		CountingObserver(Subject subject, long delayNanos) {
+			this.subject = subject;
+			this.delayNanos = delayNanos;
+			subject.attach(this);
+		}
+
+		@Override
+		public void update() {
+			update(subject.getState());
+		}
+
+		@Override
+		public void update(int state) {
+			if (delayNanos > 0) {
+				LockSupport.parkNanos(delayNanos);
+			}
+			last = state;
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		attachDuringNotification();
+
+		Subject plain = new Subject();
+		CountingObserver[] observers = observe(plain);
+		long start = System.nanoTime();
+		for (int s = 0; s < STATES; s++) {
+			plain.setState(s);
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.printf("%-22s %,10.0f setState/s, %,12.0f deliveries/s, all current after %,6d ms%n", "Subject",
+				STATES * 1e9 / elapsed, (double) STATES * OBSERVERS * 1e9 / elapsed, elapsed / 1_000_000);
+
+		for (boolean conflate : new boolean[] { false, true }) {
+			ExecutorService executor = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+			ConcurrentSubject subject = new ConcurrentSubject(executor, conflate);
+			observers = observe(subject);
+			start = System.nanoTime();
+			for (int s = 0; s < STATES; s++) {
+				subject.setState(s);
+			}
+			long setNs = System.nanoTime() - start;
+			for (CountingObserver observer : observers) {
+				while (observer.last != STATES - 1) {
+					LockSupport.parkNanos(100_000);
+				}
+			}
+			elapsed = System.nanoTime() - start;
+			System.out.printf(
+					"%-22s %,10.0f setState/s, %,12.0f deliveries/s, all current after %,6d ms, %4.1f%% conflated%n",
+					conflate ? "conflating" : "concurrent", STATES * 1e9 / setNs,
+					subject.getDeliveredCount() * 1e9 / elapsed, elapsed / 1_000_000,
+					100.0 * subject.getConflatedCount() / ((long) STATES * OBSERVERS));
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+	}
+
+	private static CountingObserver[] observe(Subject subject) {
+		CountingObserver[] observers = new CountingObserver[OBSERVERS];
+		for (int i = 0; i < OBSERVERS; i++) {
+			observers[i] = new CountingObserver(subject, i % 1000 == 0 ? SLOW_NANOS : 0);
+		}
+		return observers;
+	}
+
+	private static void attachDuringNotification() throws InterruptedException {
+		for (Subject tested : new Subject[] { new Subject(), new ConcurrentSubject(ForkJoinPool.commonPool(), false) }) {
+			Observer attaching = new Observer() {
+				@Override
+				public void update() {
+					new CountingObserver(tested, 0);
+				}
+			};
+			tested.attach(attaching);
+			new CountingObserver(tested, 0);
+			String outcome;
+			try {
+				tested.setState(1);
+				outcome = "fine";
+			} catch (ConcurrentModificationException e) {
+				outcome = "ConcurrentModificationException";
+			}
+			System.out.printf("attach during notification, %s: %s%n", tested.getClass().getSimpleName(), outcome);
+		}
+	}
+}
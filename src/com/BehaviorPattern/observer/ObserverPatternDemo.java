@@ -4,12 +4,22 @@ package com.BehaviorPattern.observer;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.ConcurrencyPattern.AsyncOutput;
+
 ////When Observable changes state all Observers are notified
 
 abstract class Observer {
 	protected Subject subject;
 
 	public abstract void update();
+
+	/**
+	 * Called with the state the notification is about, which the subject may
+	 * have changed again by the time an asynchronous delivery runs.
+	 */
+	public void update(int state) {
+		update();
+	}
 }
 
 class Subject {
@@ -32,7 +42,7 @@ class Subject {
 
 	public void notifyAllObservers() {
 		for (Observer observer : observers) {
-			observer.update();
+			observer.update(state);
 		}
 	}
 }
@@ -46,7 +56,12 @@ class BinaryObserver extends Observer {
 
 	@Override
 	public void update() {
-		System.out.println("Binary String: " + Integer.toBinaryString(subject.getState()));
+		update(subject.getState());
+	}
+
+	@Override
+	public void update(int state) {
+		AsyncOutput.DEFAULT.line().append("Binary String: ").appendBinary(state).println();
 	}
 }
 
@@ -59,7 +74,12 @@ class OctalObserver extends Observer {
 
 	@Override
 	public void update() {
-		System.out.println("Octal String: " + Integer.toOctalString(subject.getState()));
+		update(subject.getState());
+	}
+
+	@Override
+	public void update(int state) {
+		AsyncOutput.DEFAULT.line().append("Octal String: ").appendOctal(state).println();
 	}
 }
 
@@ -72,7 +92,12 @@ class HexaObserver extends Observer {
 
 	@Override
 	public void update() {
-		System.out.println("Hex String: " + Integer.toHexString(subject.getState()).toUpperCase());
+		update(subject.getState());
+	}
+
+	@Override
+	public void update(int state) {
+		AsyncOutput.DEFAULT.line().append("Hex String: ").appendHex(state).println();
 	}
 }
 
@@ -84,9 +109,9 @@ public class ObserverPatternDemo {
 		new OctalObserver(subject);
 		new BinaryObserver(subject);
 
-		System.out.println("First state change: 15");
+		AsyncOutput.DEFAULT.line().append("First state change: 15").println();
 		subject.setState(15);
-		System.out.println("Second state change: 10");
+		AsyncOutput.DEFAULT.line().append("Second state change: 10").println();
 		subject.setState(10);
 	}
 }
\ No newline at end of file
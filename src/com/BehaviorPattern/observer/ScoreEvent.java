@@ -0,0 +1,18 @@
+package com.BehaviorPattern.observer;
+
+/**
+ * Immutable score update published by {@link CricketData}.
+ *
+ * @author nitin
+ *
+ */
+final class ScoreEvent {
+	final int runs, wickets;
+	final float overs;
+
+	ScoreEvent(int runs, int wickets, float overs) {
+		this.runs = runs;
+		this.wickets = wickets;
+		this.overs = overs;
+	}
+}
@@ -0,0 +1,130 @@
+package com.BehaviorPattern.observer;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes 10 million score updates through {@link CricketData} to 1 to 1,000
+ * subscribers, each requesting 1,024 scores at a time. Meanwhile another
+ * thread keeps subscribing and cancelling, and one subscriber takes 1 ms per
+ * score. Reports updates per second on the publishing thread, deliveries per
+ * second and the share of scores that lagging subscribers skipped, and checks
+ * that every subscriber sees the scores in order.
+ *
+ * @author nitin
+ *
+ */
+public class ScoreFeedLoadTest {
+
+	private static final int UPDATES = 10_000_000;
+	private static final int REQUEST_BATCH = 1024;
+
+	static class CountingSubscriber implements Flow.Subscriber<ScoreEvent> {
+		private final int batch;
+		private final long delayNanos;
+		private volatile Flow.Subscription subscription;
+		private int outstanding;
+		private int lastRuns = -1;
+		volatile long received;
+		volatile long outOfOrder;
+
+		CountingSubscriber(int batch, long delayNanos) {
+			this.batch = batch;
+			this.delayNanos = delayNanos;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			outstanding = batch;
+			subscription.request(batch);
+		}
+
+		@Override
+		public void onNext(ScoreEvent score) {
+			if (delayNanos > 0) {
+				LockSupport.parkNanos(delayNanos);
+			}
+			if (score.runs <= lastRuns) {
+				outOfOrder++;
+			}
+			lastRuns = score.runs;
+			received++;
+			// ask for the next batch while half of this one is still to come
+			if (--outstanding <= batch / 2) {
+				outstanding += batch;
+				subscription.request(batch);
+			}
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			error.printStackTrace();
+		}
+
+		@Override
+		public void onComplete() {
+		}
+
+		void cancel() {
+			subscription.cancel();
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		for (int subscribers : new int[] { 1, 10, 100, 1000 }) {
+			ForkJoinPool executor = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+			CricketData feed = new CricketData(executor, 1 << 16, 256);
+			CountingSubscriber[] counting = new CountingSubscriber[subscribers];
+			for (int i = 0; i < subscribers; i++) {
+				counting[i] = new CountingSubscriber(REQUEST_BATCH, 0);
+				feed.subscribe(counting[i]);
+			}
+			CountingSubscriber slow = new CountingSubscriber(1, TimeUnit.MILLISECONDS.toNanos(1));
+			feed.subscribe(slow);
+
+			AtomicBoolean churning = new AtomicBoolean(true);
+			AtomicLong churned = new AtomicLong();
+			Thread churn = new Thread(() -> {
+				while (churning.get()) {
+					CountingSubscriber subscriber = new CountingSubscriber(REQUEST_BATCH, 0);
+					feed.subscribe(subscriber);
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+					subscriber.cancel();
+					churned.incrementAndGet();
+				}
+			});
+			churn.start();
+
+			long start = System.nanoTime();
+			for (int i = 0; i < UPDATES; i++) {
+				feed.publish(i, i % 10, i / 6 + i % 6 / 10f);
+			}
+			long publishNs = System.nanoTime() - start;
+			churning.set(false);
+			churn.join();
+			slow.cancel();
+			feed.close();
+			if (!feed.awaitCompletion(1, TimeUnit.MINUTES)) {
+				System.out.println("subscribers did not complete");
+			}
+			long elapsed = System.nanoTime() - start;
+			executor.shutdown();
+
+			long outOfOrder = slow.outOfOrder;
+			for (CountingSubscriber subscriber : counting) {
+				outOfOrder += subscriber.outOfOrder;
+			}
+			long delivered = feed.getDeliveredCount();
+			System.out.printf(
+					"%4d subscribers: %,11.0f updates/s, %,12.0f deliveries/s, %4.1f%% skipped, %,d churned, slow one got %,d, out of order %d%n",
+					subscribers, UPDATES * 1e9 / publishNs, delivered * 1e9 / elapsed,
+					100.0 * feed.getSkippedCount() / (delivered + feed.getSkippedCount()), churned.get(),
+					slow.received, outOfOrder);
+		}
+	}
+}
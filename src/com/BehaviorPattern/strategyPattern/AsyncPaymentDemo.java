@@ -0,0 +1,112 @@
+package com.BehaviorPattern.strategyPattern;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for a card or net-banking gateway: every round trip costs a
+ * fixed latency plus a small amount per payment.
+ *
+ * @author nitin
+ *
+ */
+class FakePaymentGateway implements PaymentGateway {
+	private final long roundTripMicros;
+	private final long perPaymentMicros;
+	private final AtomicLong roundTrips = new AtomicLong();
+	private final AtomicLong payments = new AtomicLong();
+
+	public FakePaymentGateway(long roundTripMicros, long perPaymentMicros) {
+		this.roundTripMicros = roundTripMicros;
+		this.perPaymentMicros = perPaymentMicros;
+	}
+
+	@Override
+	public void payBatch(List<PaymentStrategy> strategies, int[] amounts) throws InterruptedException {
+		roundTrips.incrementAndGet();
+		payments.addAndGet(amounts.length);
+		TimeUnit.MICROSECONDS.sleep(roundTripMicros + perPaymentMicros * amounts.length);
+	}
+
+	public long getRoundTrips() {
+		return roundTrips.get();
+	}
+
+	public long getPayments() {
+		return payments.get();
+	}
+}
+
+/**
+ * Many checkout threads paying through a slow gateway, once synchronously per
+ * cart and once through {@link AsyncPaymentProcessor}.
+ */
+public class AsyncPaymentDemo {
+
+	private static final int CHECKOUTS = 2_000;
+	private static final int THREADS = 50;
+
+	public static void main(String[] args) throws Exception {
+		ShoppingCart cart = new ShoppingCart();
+		cart.addItem(new Item("1234", 10));
+		cart.addItem(new Item("5678", 40));
+		try (AsyncPaymentProcessor processor = new AsyncPaymentProcessor(new StrategyPaymentGateway(), 16, 8, 1,
+				TimeUnit.MILLISECONDS)) {
+			cart.pay(new CreditCardStrategy("Nitin Kumar Gupta", "1234567890123456", "786", "12/15"), processor)
+					.thenAccept(amount -> System.out.println("card payment of " + amount + " confirmed")).join();
+		}
+
+		// 5 ms per round trip, 20 us per payment
+		FakePaymentGateway syncGateway = new FakePaymentGateway(5_000, 20);
+		long start = System.nanoTime();
+		PaymentStrategy card = new CreditCardStrategy("Nitin Kumar Gupta", "1234567890123456", "786", "12/15");
+		PaymentStrategy bank = new NetBankingStrategy("nitinkumargupta", "IamFighter700@");
+		runCheckouts(amount -> syncGateway.payBatch(Collections.singletonList(card), new int[] { amount }));
+		long syncNs = System.nanoTime() - start;
+		long asyncNs;
+
+		FakePaymentGateway batchGateway = new FakePaymentGateway(5_000, 20);
+		try (AsyncPaymentProcessor processor = new AsyncPaymentProcessor(batchGateway, 256, 64, 2,
+				TimeUnit.MILLISECONDS).withTimeout(CreditCardStrategy.class, 2, TimeUnit.SECONDS)) {
+			AtomicLong counter = new AtomicLong();
+			List<CompletableFuture<Integer>> results = Collections.synchronizedList(new ArrayList<>());
+			start = System.nanoTime();
+			runCheckouts(amount -> results
+					.add(processor.submit(counter.incrementAndGet() % 2 == 0 ? card : bank, amount)));
+			CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+			asyncNs = System.nanoTime() - start;
+		}
+
+		System.out.printf("synchronous: %,.0f payments/s, %d gateway round trips%n",
+				CHECKOUTS * 1e9 / syncNs, syncGateway.getRoundTrips());
+		System.out.printf("async batch: %,.0f payments/s, %d gateway round trips%n",
+				CHECKOUTS * 1e9 / asyncNs, batchGateway.getRoundTrips());
+	}
+
+	interface Checkout {
+		void pay(int amount) throws Exception;
+	}
+
+	private static void runCheckouts(Checkout checkout) throws InterruptedException {
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread(() -> {
+				try {
+					for (int i = 0; i < CHECKOUTS / THREADS; i++) {
+						checkout.pay(50);
+					}
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+}
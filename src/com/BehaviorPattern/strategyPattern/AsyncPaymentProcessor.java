@@ -0,0 +1,249 @@
+package com.BehaviorPattern.strategyPattern;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ConcurrencyPattern.VirtualThreads;
+
+/**
+ * Asynchronous payment mode for {@link ShoppingCart}. A payment returns a
+ * {@link CompletableFuture} immediately; payments are queued per strategy type
+ * and sent to the {@link PaymentGateway} in batches.
+ * <ul>
+ * <li>at most <code>maxInFlight</code> payments are queued or being charged,
+ * further submissions block the caller until a payment completes
+ * (backpressure)</li>
+ * <li>every strategy type can have its own timeout. A payment still queued
+ * when it expires is dropped and the caller's future fails with a
+ * {@link TimeoutException}. A payment already sent to the gateway is never
+ * reported as timed out, so a caller never retries a payment that may still
+ * be charged.</li>
+ * <li>gateway calls run on virtual threads when the runtime has them (Java
+ * 21+), on a cached thread pool otherwise</li>
+ * </ul>
+ *
+ * @author nitin
+ *
+ */
+class AsyncPaymentProcessor implements AutoCloseable {
+
+	private static final int QUEUED = 0;
+	private static final int CHARGING = 1;
+	private static final int DROPPED = 2;
+
+	// the state decides who completes the payment and releases its permit: the
+	// lane when it moves to CHARGING, the timeout or close() when it moves to
+	// DROPPED
+	private static final class Payment extends AtomicInteger {
+		private static final long serialVersionUID = 1L;
+
+		private final PaymentStrategy strategy;
+		private final int amount;
+		private final CompletableFuture<Integer> result = new CompletableFuture<>();
+		private volatile ScheduledFuture<?> timeout;
+
+		Payment(PaymentStrategy strategy, int amount) {
+			this.strategy = strategy;
+			this.amount = amount;
+		}
+
+		boolean claim(int state) {
+			if (!compareAndSet(QUEUED, state)) {
+				return false;
+			}
+			ScheduledFuture<?> timeout = this.timeout;
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+			return true;
+		}
+	}
+
+	private final class Lane implements Runnable {
+		private final LinkedBlockingQueue<Payment> queue = new LinkedBlockingQueue<>();
+
+		private void drop(Payment payment, Throwable cause) {
+			if (payment.claim(DROPPED)) {
+				queue.remove(payment);
+				inFlight.release();
+				payment.result.completeExceptionally(cause);
+			}
+		}
+
+		@Override
+		public void run() {
+			List<Payment> batch = new ArrayList<>(maxBatchSize);
+			while (running || !queue.isEmpty()) {
+				try {
+					Payment first = queue.poll(100, TimeUnit.MILLISECONDS);
+					if (first == null) {
+						continue;
+					}
+					batch.add(first);
+					long deadline = System.nanoTime() + maxDelayNanos;
+					while (batch.size() < maxBatchSize) {
+						long left = deadline - System.nanoTime();
+						Payment next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : null;
+						if (next == null) {
+							break;
+						}
+						batch.add(next);
+						queue.drainTo(batch, maxBatchSize - batch.size());
+					}
+					// payments that timed out while waiting are left out
+					List<Payment> submitted = new ArrayList<>(batch.size());
+					for (Payment payment : batch) {
+						if (payment.claim(CHARGING)) {
+							submitted.add(payment);
+						}
+					}
+					if (!submitted.isEmpty()) {
+						executor.execute(() -> charge(submitted));
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} finally {
+					batch.clear();
+				}
+			}
+		}
+	}
+
+	private final PaymentGateway gateway;
+	private final int maxBatchSize;
+	private final long maxDelayNanos;
+	private final Semaphore inFlight;
+	private final ExecutorService executor = newExecutor();
+	private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+		Thread thread = new Thread(r, "payment-timeouts");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Map<Class<?>, Lane> lanes = new ConcurrentHashMap<>();
+	private final Map<Class<?>, Long> timeouts = new ConcurrentHashMap<>();
+	private final List<Thread> dispatchers = new ArrayList<>();
+	private volatile boolean running = true;
+
+	public AsyncPaymentProcessor(PaymentGateway gateway, int maxInFlight, int maxBatchSize, long maxDelay,
+			TimeUnit unit) {
+		this.gateway = gateway;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+		// timeouts of charged payments are cancelled, do not keep them queued
+		timer.setRemoveOnCancelPolicy(true);
+	}
+
+	public AsyncPaymentProcessor withTimeout(Class<? extends PaymentStrategy> type, long timeout, TimeUnit unit) {
+		timeouts.put(type, unit.toNanos(timeout));
+		return this;
+	}
+
+	public CompletableFuture<Integer> submit(PaymentStrategy strategy, int amount) throws InterruptedException {
+		if (!running) {
+			throw new IllegalStateException("Payment processor is closed");
+		}
+		inFlight.acquire();
+		Lane lane;
+		try {
+			lane = lanes.computeIfAbsent(strategy.getClass(), this::startLane);
+		} catch (IllegalStateException e) {
+			inFlight.release();
+			throw e;
+		}
+		Payment payment = new Payment(strategy, amount);
+		Long timeout = timeouts.get(strategy.getClass());
+		if (timeout != null) {
+			payment.timeout = timer.schedule(() -> lane.drop(payment,
+					new TimeoutException(strategy.getClass().getSimpleName() + " payment timed out")), timeout,
+					TimeUnit.NANOSECONDS);
+		}
+		lane.queue.add(payment);
+		// the lane may have stopped before it could see the payment
+		if (!running && payment.claim(DROPPED)) {
+			lane.queue.remove(payment);
+			inFlight.release();
+			throw new IllegalStateException("Payment processor is closed");
+		}
+		return payment.result;
+	}
+
+	private Lane startLane(Class<?> type) {
+		Lane lane = new Lane();
+		Thread dispatcher = new Thread(lane, "payments-" + type.getSimpleName());
+		dispatcher.setDaemon(true);
+		// checked under the lock so close() either joins the new lane or it is
+		// never started
+		synchronized (dispatchers) {
+			if (!running) {
+				throw new IllegalStateException("Payment processor is closed");
+			}
+			dispatchers.add(dispatcher);
+			dispatcher.start();
+		}
+		return lane;
+	}
+
+	private void charge(List<Payment> batch) {
+		List<PaymentStrategy> strategies = new ArrayList<>(batch.size());
+		int[] amounts = new int[batch.size()];
+		for (int i = 0; i < amounts.length; i++) {
+			strategies.add(batch.get(i).strategy);
+			amounts[i] = batch.get(i).amount;
+		}
+		try {
+			gateway.payBatch(strategies, amounts);
+			for (Payment payment : batch) {
+				payment.result.complete(payment.amount);
+			}
+		} catch (Throwable e) {
+			for (Payment payment : batch) {
+				payment.result.completeExceptionally(e);
+			}
+		} finally {
+			// the permit is held until the gateway is done, even if the caller
+			// already gave up with a timeout
+			inFlight.release(batch.size());
+		}
+	}
+
+	private static ExecutorService newExecutor() {
+		return VirtualThreads.newPerTaskExecutor(() -> Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "payment-gateway");
+			thread.setDaemon(true);
+			return thread;
+		}));
+	}
+
+	/** Stops accepting payments and waits for the queued ones to be charged. */
+	@Override
+	public void close() {
+		running = false;
+		try {
+			synchronized (dispatchers) {
+				for (Thread dispatcher : dispatchers) {
+					dispatcher.join();
+				}
+			}
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			timer.shutdownNow();
+		}
+	}
+}
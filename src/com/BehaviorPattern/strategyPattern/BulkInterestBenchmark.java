@@ -0,0 +1,45 @@
+package com.BehaviorPattern.strategyPattern;
+
+import java.util.Random;
+
+/**
+ * Compares {@link InterestCalculatorUp1} called once per account with
+ * {@link BulkInterestCalculator} on the same columns.
+ *
+ * @author nitin
+ *
+ */
+public class BulkInterestBenchmark {
+
+	private static final int ACCOUNTS = 5_000_000;
+
+	public static void main(String[] args) {
+		Random random = new Random(7);
+		AccountTypes[] types = AccountTypes.values();
+		byte[] accountTypes = new byte[ACCOUNTS];
+		double[] balances = new double[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountTypes[i] = (byte) random.nextInt(types.length);
+			balances[i] = random.nextDouble() * 200_000;
+		}
+		double[] perCall = new double[ACCOUNTS];
+		double[] bulk = new double[ACCOUNTS];
+
+		InterestCalculatorUp1 calculator = new InterestCalculatorUp1();
+		BulkInterestCalculator bulkCalculator = new BulkInterestCalculator();
+		for (int round = 1; round <= 5; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ACCOUNTS; i++) {
+				perCall[i] = calculator.calculateInterest(types[accountTypes[i]], balances[i]);
+			}
+			long perCallNs = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			bulkCalculator.calculateInterest(accountTypes, balances, bulk);
+			long bulkNs = System.nanoTime() - start;
+
+			System.out.printf("round %d: per call %.2f ns/account, bulk %.2f ns/account, same results: %b%n", round,
+					(double) perCallNs / ACCOUNTS, (double) bulkNs / ACCOUNTS, java.util.Arrays.equals(perCall, bulk));
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.BehaviorPattern.strategyPattern;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Month-end interest over columns of balances and account types. Every block
+ * of accounts is grouped by {@link AccountTypes} (a counting sort), so each
+ * {@link InterestCalculationStrategy} runs its bulk loop over contiguous
+ * balances of a single type instead of one virtual call per account. Large
+ * arrays are split into blocks with fork-join. The scratch columns for the
+ * grouping are allocated once per call, or kept by callers that calculate
+ * batch after batch, and every block uses its own range of them.
+ *
+ * @author nitin
+ *
+ */
+class BulkInterestCalculator {
+
+	// accounts per leaf task, large enough to amortize the grouping
+	private static final int BLOCK = 1 << 14;
+
+	private static final AccountTypes[] TYPES = AccountTypes.values();
+
+	private final InterestCalculationStrategy[] strategies = new InterestCalculationStrategy[TYPES.length];
+	private final ForkJoinPool pool;
+
+	public BulkInterestCalculator() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public BulkInterestCalculator(ForkJoinPool pool) {
+		this.pool = pool;
+		InterestCalculationStrategyFactory factory = new InterestCalculationStrategyFactory();
+		for (AccountTypes type : TYPES) {
+			strategies[type.ordinal()] = factory.getInterestCalculationStrategy(type);
+		}
+	}
+
+	/**
+	 * @param accountTypes {@link AccountTypes#ordinal()} of every account
+	 * @param balances     balance of every account
+	 * @param interest     receives the monthly interest of every account
+	 * @throws IllegalArgumentException if the columns differ in length or an
+	 *                                  account type is not an ordinal
+	 */
+	public void calculateInterest(byte[] accountTypes, double[] balances, double[] interest) {
+		if (accountTypes.length != balances.length || interest.length < balances.length) {
+			throw new IllegalArgumentException("Columns must have the same length");
+		}
+		calculateInterest(accountTypes, balances, interest, balances.length, new Scratch(balances.length));
+	}
+
+	/**
+	 * Calculates the first <code>count</code> accounts of the columns, so the
+	 * same columns and scratch can be refilled for every batch.
+	 *
+	 * @param scratch grouping columns for at least <code>count</code> accounts,
+	 *                used by one call at a time
+	 * @throws IllegalArgumentException if a column or the scratch holds fewer
+	 *                                  than <code>count</code> accounts or an
+	 *                                  account type is not an ordinal
+	 */
+	public void calculateInterest(byte[] accountTypes, double[] balances, double[] interest, int count,
+			Scratch scratch) {
+		if (count < 0 || accountTypes.length < count || balances.length < count || interest.length < count) {
+			throw new IllegalArgumentException("Columns must hold " + count + " accounts");
+		}
+		if (scratch.positions.length < count) {
+			throw new IllegalArgumentException("Scratch holds only " + scratch.positions.length + " accounts");
+		}
+		checkAccountTypes(accountTypes, 0, count);
+		if (count <= BLOCK) {
+			calculateBlock(accountTypes, balances, interest, scratch, 0, count);
+		} else {
+			pool.invoke(new BlockTask(accountTypes, balances, interest, scratch, 0, count));
+		}
+	}
+
+	// every type indexes the grouping offsets, so one out of range would
+	// corrupt the groups of its block or of the next one
+	private static void checkAccountTypes(byte[] accountTypes, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if ((accountTypes[i] & 0xFF) >= TYPES.length) {
+				throw new IllegalArgumentException("Unknown account type " + accountTypes[i] + " at " + i);
+			}
+		}
+	}
+
+	/**
+	 * Grouping columns for up to <code>capacity</code> accounts. Block b of a
+	 * call owns [b * BLOCK, (b + 1) * BLOCK) of the long columns and its own
+	 * type offsets.
+	 */
+	static final class Scratch {
+		private static final int OFFSETS = 2 * (TYPES.length + 1);
+
+		final int[] positions;
+		final double[] grouped;
+		final double[] groupedInterest;
+		final int[] offsets;
+
+		Scratch(int capacity) {
+			this.positions = new int[capacity];
+			this.grouped = new double[capacity];
+			this.groupedInterest = new double[capacity];
+			this.offsets = new int[(capacity + BLOCK - 1) / BLOCK * OFFSETS];
+		}
+	}
+
+	private class BlockTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] accountTypes;
+		private final double[] balances;
+		private final double[] interest;
+		private final Scratch scratch;
+		private final int from;
+		private final int to;
+
+		BlockTask(byte[] accountTypes, double[] balances, double[] interest, Scratch scratch, int from, int to) {
+			this.accountTypes = accountTypes;
+			this.balances = balances;
+			this.interest = interest;
+			this.scratch = scratch;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BLOCK) {
+				calculateBlock(accountTypes, balances, interest, scratch, from, to);
+				return;
+			}
+			// split on a block boundary, blocks are where their scratch ranges are
+			int middle = from + Math.max(1, (to - from) / BLOCK / 2) * BLOCK;
+			invokeAll(new BlockTask(accountTypes, balances, interest, scratch, from, middle),
+					new BlockTask(accountTypes, balances, interest, scratch, middle, to));
+		}
+	}
+
+	private void calculateBlock(byte[] accountTypes, double[] balances, double[] interest, Scratch scratch, int from,
+			int to) {
+		int[] positions = scratch.positions;
+		double[] grouped = scratch.grouped;
+		double[] groupedInterest = scratch.groupedInterest;
+		int[] offsets = scratch.offsets;
+		// start of every type's group, then the next free slot of every type
+		int start = from / BLOCK * Scratch.OFFSETS;
+		int next = start + TYPES.length + 1;
+
+		// counting sort of the block by account type
+		for (int t = 0; t <= TYPES.length; t++) {
+			offsets[start + t] = from;
+		}
+		for (int i = from; i < to; i++) {
+			offsets[start + accountTypes[i] + 1]++;
+		}
+		for (int t = 0; t < TYPES.length; t++) {
+			offsets[start + t + 1] += offsets[start + t] - from;
+		}
+		System.arraycopy(offsets, start, offsets, next, TYPES.length + 1);
+		for (int i = from; i < to; i++) {
+			int slot = offsets[next + accountTypes[i]]++;
+			positions[slot] = i;
+			grouped[slot] = balances[i];
+		}
+
+		for (int t = 0; t < TYPES.length; t++) {
+			if (offsets[start + t] < offsets[start + t + 1]) {
+				strategies[t].calculateInterest(grouped, groupedInterest, offsets[start + t], offsets[start + t + 1]);
+			}
+		}
+		for (int slot = from; slot < to; slot++) {
+			interest[positions[slot]] = groupedInterest[slot];
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package com.BehaviorPattern.strategyPattern;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Live shopping carts keyed by session id. The map is a
+ * {@link ConcurrentHashMap}, every cart is guarded by the monitor of its own
+ * session, so request threads only contend when they work on the same cart.
+ *
+ * Idle carts are evicted by a hashed timer wheel instead of scanning all
+ * sessions: a session sits in the bucket of its expected expiry, and an access
+ * only updates its last access time. When the wheel reaches the bucket, a
+ * session that was used in the meantime is simply moved to the bucket of its
+ * new expiry, so the cost of eviction is proportional to the sessions that
+ * actually come due.
+ *
+ * @author nitin
+ *
+ */
+class CartSessionStore implements AutoCloseable {
+
+	static final class Session {
+		private final String id;
+		private final ColumnarShoppingCart cart;
+		private volatile long lastAccess;
+		// guarded by the session monitor
+		private boolean evicted;
+
+		Session(String id, ColumnarShoppingCart cart, long now) {
+			this.id = id;
+			this.cart = cart;
+			this.lastAccess = now;
+		}
+	}
+
+	private static final class Bucket extends ConcurrentLinkedQueue<Session> {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/** Hashed wheel of <code>ticks</code> buckets, <code>tickMillis</code> each. */
+	private final class TimerWheel {
+		private final Bucket[] buckets;
+		private final long tickMillis;
+		// written by the expiry task, read by request threads in schedule()
+		private volatile long current;
+
+		TimerWheel(int ticks, long tickMillis, long now) {
+			this.buckets = new Bucket[Integer.highestOneBit(ticks * 2 - 1)];
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new Bucket();
+			}
+			this.tickMillis = tickMillis;
+			this.current = now / tickMillis;
+		}
+
+		void schedule(Session session, long deadline) {
+			// never schedule into a tick the wheel has already passed
+			long tick = Math.max(deadline / tickMillis, current + 1);
+			buckets[(int) (tick & (buckets.length - 1))].add(session);
+		}
+
+		// single threaded, called by the expiry task
+		void advance(long now) {
+			long target = now / tickMillis;
+			for (; current < target; current++) {
+				Bucket bucket = buckets[(int) ((current + 1) & (buckets.length - 1))];
+				for (int n = bucket.size(); n > 0; n--) {
+					Session session = bucket.poll();
+					if (session == null) {
+						break;
+					}
+					long deadline = session.lastAccess + idleMillis;
+					if (deadline > now || !evict(session)) {
+						// used since it was scheduled (or a deadline beyond one
+						// revolution of the wheel)
+						schedule(session, Math.max(deadline, now + tickMillis));
+					}
+				}
+			}
+		}
+	}
+
+	private final ConcurrentHashMap<String, Session> sessions;
+	private final Supplier<ColumnarShoppingCart> carts;
+	private final long idleMillis;
+	private final TimerWheel wheel;
+	private final ScheduledExecutorService expiry;
+	private final AtomicLong evictions = new AtomicLong();
+
+	public CartSessionStore(long idleTimeout, TimeUnit unit) {
+		this(idleTimeout, unit, 1 << 16, ColumnarShoppingCart::new);
+	}
+
+	public CartSessionStore(long idleTimeout, TimeUnit unit, int expectedSessions,
+			Supplier<ColumnarShoppingCart> carts) {
+		this.idleMillis = unit.toMillis(idleTimeout);
+		this.carts = carts;
+		this.sessions = new ConcurrentHashMap<>(expectedSessions, 0.75f, Runtime.getRuntime().availableProcessors());
+		// 64 ticks per idle timeout, so carts live at most 1/64 longer than asked
+		long tickMillis = Math.max(1, idleMillis / 64);
+		this.wheel = new TimerWheel(64, tickMillis, now());
+		this.expiry = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "cart-expiry");
+			thread.setDaemon(true);
+			return thread;
+		});
+		expiry.scheduleWithFixedDelay(() -> wheel.advance(now()), tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs <code>action</code> on the cart of the session (creating it if needed)
+	 * while holding that cart's lock.
+	 */
+	public <R> R withCart(String sessionId, Function<ColumnarShoppingCart, R> action) {
+		while (true) {
+			Session session = sessions.computeIfAbsent(sessionId, this::newSession);
+			synchronized (session) {
+				if (!session.evicted) {
+					session.lastAccess = now();
+					return action.apply(session.cart);
+				}
+			}
+			// lost a race with the expiry task, it is removing the old session
+		}
+	}
+
+	public void addItem(String sessionId, Item item) {
+		withCart(sessionId, cart -> {
+			cart.addItem(item);
+			return null;
+		});
+	}
+
+	public void removeItem(String sessionId, Item item) {
+		withCart(sessionId, cart -> {
+			cart.removeItem(item);
+			return null;
+		});
+	}
+
+	public void pay(String sessionId, PaymentStrategy paymentMethod) {
+		withCart(sessionId, cart -> {
+			cart.pay(paymentMethod);
+			return null;
+		});
+	}
+
+	/** Drops the session, e.g. after checkout. */
+	public void invalidate(String sessionId) {
+		Session session = sessions.get(sessionId);
+		if (session != null) {
+			synchronized (session) {
+				session.evicted = true;
+				sessions.remove(sessionId, session);
+			}
+		}
+	}
+
+	public int size() {
+		return sessions.size();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	private Session newSession(String sessionId) {
+		long now = now();
+		Session session = new Session(sessionId, carts.get(), now);
+		wheel.schedule(session, now + idleMillis);
+		return session;
+	}
+
+	private boolean evict(Session session) {
+		synchronized (session) {
+			if (session.evicted) {
+				// invalidated, nothing left to do
+				return true;
+			}
+			if (session.lastAccess + idleMillis > now()) {
+				return false;
+			}
+			session.evicted = true;
+			sessions.remove(session.id, session);
+		}
+		evictions.incrementAndGet();
+		return true;
+	}
+
+	private static long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	@Override
+	public void close() {
+		expiry.shutdownNow();
+	}
+}
+
+/**
+ * Mixed add/remove/pay traffic from many request threads over a large number
+ * of sessions, with idle sessions expiring while the load runs. Also reports
+ * the heap used per live cart.
+ */
+public class CartSessionStoreBenchmark {
+
+	private static final int SESSIONS = 200_000;
+	private static final int UPCS = 10_000;
+	private static final int OPERATIONS = 2_000_000;
+
+	public static void main(String[] args) throws InterruptedException {
+		Item[] catalog = new Item[UPCS];
+		for (int i = 0; i < UPCS; i++) {
+			catalog[i] = new Item(String.format("%012d", i), 1 + i % 500);
+			UpcRegistry.DEFAULT.intern(catalog[i].getUpcCode());
+		}
+		String[] ids = new String[SESSIONS];
+		for (int i = 0; i < SESSIONS; i++) {
+			ids[i] = "session-" + i;
+		}
+
+		try (CartSessionStore store = new CartSessionStore(1, TimeUnit.HOURS)) {
+			long before = usedMemory();
+			for (int i = 0; i < SESSIONS; i++) {
+				for (int j = 0; j < 4; j++) {
+					store.addItem(ids[i], catalog[(i * 7 + j * 31) % UPCS]);
+				}
+			}
+			long after = usedMemory();
+			System.out.printf("%,d live carts with 4 items: %.0f bytes per cart%n", store.size(),
+					(double) (after - before) / store.size());
+		}
+
+		PaymentStrategy quiet = amount -> {
+		};
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= Math.max(8, cores * 2); threads *= 2) {
+			// short idle timeout so eviction runs alongside the traffic
+			try (CartSessionStore store = new CartSessionStore(200, TimeUnit.MILLISECONDS)) {
+				Thread[] workers = new Thread[threads];
+				int perThread = OPERATIONS / threads;
+				long start = System.nanoTime();
+				for (int t = 0; t < threads; t++) {
+					long seed = t;
+					workers[t] = new Thread(() -> {
+						Random random = new Random(seed);
+						for (int i = 0; i < perThread; i++) {
+							// a hot tenth of the sessions gets most of the traffic
+							String id = ids[random.nextInt(4) == 0 ? random.nextInt(SESSIONS)
+									: random.nextInt(SESSIONS / 10)];
+							Item item = catalog[random.nextInt(UPCS)];
+							int op = random.nextInt(10);
+							if (op < 6) {
+								store.addItem(id, item);
+							} else if (op < 8) {
+								store.removeItem(id, item);
+							} else {
+								store.pay(id, quiet);
+							}
+						}
+					});
+					workers[t].start();
+				}
+				for (Thread worker : workers) {
+					worker.join();
+				}
+				long elapsed = System.nanoTime() - start;
+				System.out.printf("%2d threads: %,.0f ops/s, %,d live carts, %,d evicted%n", threads,
+						(double) perThread * threads * 1e9 / elapsed, store.size(), store.getEvictionCount());
+			}
+		}
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,95 @@
+package com.BehaviorPattern.strategyPattern;
+
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Builds a large B2B cart both ways and compares heap usage and the cost of
+ * removing items and paying.
+ *
+ * @author nitin
+ *
+ */
+public class ColumnarCartDemo {
+
+	private static final int ITEMS = 200_000;
+
+	public static void main(String[] args) {
+		ColumnarShoppingCart small = new ColumnarShoppingCart();
+		small.addItem(new Item("1234", 10));
+		small.addItem(new Item("5678", 40));
+		small.addItem(new Item("5678", 35));
+		small.removeItem("1234", 10);
+		// never added, neither removes anything nor grows the registry
+		small.removeItem("0000", 10);
+		small.pay(new NetBankingStrategy("nitinkumargupta", "IamFighter700@"));
+
+		String[] upcs = new String[ITEMS];
+		for (int i = 0; i < ITEMS; i++) {
+			upcs[i] = String.format("%012d", i);
+			UpcRegistry.DEFAULT.intern(upcs[i]);
+		}
+
+		long objectBytes = retainedSize(() -> buildObjectCart(upcs));
+		long columnBytes = retainedSize(() -> buildColumnarCart(upcs));
+
+		ShoppingCart objects = buildObjectCart(upcs);
+		ColumnarShoppingCart columns = buildColumnarCart(upcs);
+		System.out.printf("per item: ArrayList<Item> %.1f bytes, columns %.1f bytes (%.1f counted)%n",
+				(double) objectBytes / ITEMS, (double) columnBytes / ITEMS, (double) columns.footprint() / ITEMS);
+
+		PaymentStrategy quiet = amount -> {
+		};
+		int removals = 2_000;
+		long start = System.nanoTime();
+		for (int i = 0; i < removals; i++) {
+			objects.removeItem(objects.items.get(objects.items.size() / 2));
+			objects.pay(quiet);
+		}
+		long objectNs = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < removals; i++) {
+			columns.removeItem(upcs[i * 7], 1 + i * 7 % 500);
+			columns.pay(quiet);
+		}
+		long columnNs = System.nanoTime() - start;
+		System.out.printf("remove + pay: ArrayList<Item> %,d ns/op, columns %,d ns/op (totals %d / %d)%n",
+				objectNs / removals, columnNs / removals, objects.calculateTotal(), columns.calculateTotal());
+	}
+
+	// keeps the measured object reachable while the heap is sampled
+	private static Object retained;
+
+	// heap used with the object minus heap used after dropping it again
+	private static long retainedSize(Supplier<Object> builder) {
+		retained = builder.get();
+		long with = usedMemory();
+		retained = null;
+		return with - usedMemory();
+	}
+
+	private static ShoppingCart buildObjectCart(String[] upcs) {
+		ShoppingCart cart = new ShoppingCart();
+		for (int i = 0; i < upcs.length; i++) {
+			cart.addItem(new Item(upcs[i], 1 + i % 500));
+		}
+		return cart;
+	}
+
+	private static ColumnarShoppingCart buildColumnarCart(String[] upcs) {
+		ColumnarShoppingCart cart = new ColumnarShoppingCart(UpcRegistry.DEFAULT, upcs.length);
+		for (int i = 0; i < upcs.length; i++) {
+			cart.addItem(upcs[i], 1 + i % 500);
+		}
+		return cart;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,192 @@
+package com.BehaviorPattern.strategyPattern;
+
+import java.util.Arrays;
+
+/**
+ * {@link ShoppingCart} stored as primitive columns. Every distinct UPC and
+ * price owns one slot holding the interned UPC id, the unit price and the
+ * quantity; an open addressing index maps the pair to its slot. Like
+ * {@link ShoppingCart}, the same UPC may be added at different prices, each
+ * price is a line of its own. Removing the last unit of a line moves the last
+ * slot into the hole, so both add and remove are O(1), and the total is kept
+ * up to date on every change so {@link #pay(PaymentStrategy)} does not rescan
+ * the cart.
+ *
+ * Only adding interns UPCs in the registry, removing and querying UPCs that
+ * were never added leave it alone.
+ *
+ * @author nitin
+ *
+ */
+class ColumnarShoppingCart {
+
+	private static final int EMPTY = -1;
+
+	private final UpcRegistry registry;
+
+	// columns, one entry per distinct UPC
+	private int[] upcIds;
+	private int[] prices;
+	private int[] quantities;
+	private int size;
+
+	// (UPC id, price) -> slot + 1 (0 is empty), linear probing; the key of an
+	// entry is read back from the columns so the index needs a single int per
+	// position
+	private int[] index;
+
+	private long total;
+
+	public ColumnarShoppingCart() {
+		this(UpcRegistry.DEFAULT, 16);
+	}
+
+	public ColumnarShoppingCart(UpcRegistry registry, int expectedItems) {
+		this.registry = registry;
+		int capacity = Math.max(4, expectedItems);
+		this.upcIds = new int[capacity];
+		this.prices = new int[capacity];
+		this.quantities = new int[capacity];
+		allocateIndex(Integer.highestOneBit(capacity * 2 - 1) << 1);
+	}
+
+	public void addItem(Item item) {
+		addItem(item.getUpcCode(), item.getPrice());
+	}
+
+	public void addItem(String upc, int price) {
+		int upcId = registry.intern(upc);
+		int slot = find(upcId, price);
+		if (slot == EMPTY) {
+			if (size == upcIds.length) {
+				grow();
+			}
+			slot = size++;
+			upcIds[slot] = upcId;
+			prices[slot] = price;
+			quantities[slot] = 0;
+			insert(slot);
+		}
+		quantities[slot]++;
+		total += price;
+	}
+
+	public void removeItem(Item item) {
+		removeItem(item.getUpcCode(), item.getPrice());
+	}
+
+	/** Removes one unit of the UPC at the price, does nothing if it is not in the cart. */
+	public void removeItem(String upc, int price) {
+		int slot = find(upc, price);
+		if (slot == EMPTY) {
+			return;
+		}
+		total -= prices[slot];
+		if (--quantities[slot] > 0) {
+			return;
+		}
+		delete(slot);
+		int last = --size;
+		if (slot != last) {
+			upcIds[slot] = upcIds[last];
+			prices[slot] = prices[last];
+			quantities[slot] = quantities[last];
+			index[position(upcIds[slot], prices[slot])] = slot + 1;
+		}
+	}
+
+	public int quantity(String upc, int price) {
+		int slot = find(upc, price);
+		return slot == EMPTY ? 0 : quantities[slot];
+	}
+
+	public int distinctItems() {
+		return size;
+	}
+
+	public int calculateTotal() {
+		return Math.toIntExact(total);
+	}
+
+	public void pay(PaymentStrategy paymentMethod) {
+		paymentMethod.pay(calculateTotal());
+	}
+
+	/** Bytes held by the columns and the index, excluding the shared registry. */
+	public long footprint() {
+		return 4L * (upcIds.length + prices.length + quantities.length + index.length);
+	}
+
+	private void grow() {
+		int capacity = upcIds.length * 2;
+		upcIds = Arrays.copyOf(upcIds, capacity);
+		prices = Arrays.copyOf(prices, capacity);
+		quantities = Arrays.copyOf(quantities, capacity);
+		allocateIndex(index.length * 2);
+		for (int slot = 0; slot < size; slot++) {
+			insert(slot);
+		}
+	}
+
+	private void allocateIndex(int capacity) {
+		index = new int[capacity];
+	}
+
+	private int hash(int upcId, int price) {
+		int h = upcId * 0x9e3779b9 + price * 0x85ebca6b;
+		return (h ^ (h >>> 16)) & (index.length - 1);
+	}
+
+	private boolean holds(int slot, int upcId, int price) {
+		return upcIds[slot] == upcId && prices[slot] == price;
+	}
+
+	// index position of a line that is known to be present
+	private int position(int upcId, int price) {
+		int i = hash(upcId, price);
+		while (!holds(index[i] - 1, upcId, price)) {
+			i = (i + 1) & (index.length - 1);
+		}
+		return i;
+	}
+
+	private int find(String upc, int price) {
+		int upcId = registry.find(upc);
+		return upcId == UpcRegistry.ABSENT ? EMPTY : find(upcId, price);
+	}
+
+	private int find(int upcId, int price) {
+		for (int i = hash(upcId, price);; i = (i + 1) & (index.length - 1)) {
+			if (index[i] == 0) {
+				return EMPTY;
+			}
+			if (holds(index[i] - 1, upcId, price)) {
+				return index[i] - 1;
+			}
+		}
+	}
+
+	private void insert(int slot) {
+		int i = hash(upcIds[slot], prices[slot]);
+		while (index[i] != 0) {
+			i = (i + 1) & (index.length - 1);
+		}
+		index[i] = slot + 1;
+	}
+
+	// backward shift deletion keeps probe chains intact without tombstones
+	private void delete(int slot) {
+		int mask = index.length - 1;
+		int hole = position(upcIds[slot], prices[slot]);
+		for (int i = (hole + 1) & mask; index[i] != 0; i = (i + 1) & mask) {
+			int entry = index[i] - 1;
+			int home = hash(upcIds[entry], prices[entry]);
+			// move the entry back if the hole lies between its home and itself
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				index[hole] = index[i];
+				hole = i;
+			}
+		}
+		index[hole] = 0;
+	}
+}
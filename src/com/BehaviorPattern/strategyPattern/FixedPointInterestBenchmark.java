@@ -0,0 +1,201 @@
+package com.BehaviorPattern.strategyPattern;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+/**
+ * Cent-exact counterpart of {@link InterestCalculationStrategy}. Balances are
+ * <code>long</code> minor units (cents) and the result is the monthly interest
+ * in minor units, rounded half-even (banker's rounding).
+ *
+ * @author nitin
+ *
+ */
+interface FixedPointInterestStrategy {
+	long calculateInterest(long balanceMinor);
+
+	default void calculateInterest(long[] balances, long[] interest, int from, int to) {
+		for (int i = from; i < to; i++) {
+			interest[i] = calculateInterest(balances[i]);
+		}
+	}
+}
+
+/**
+ * Monthly interest <code>balance * numerator / denominator</code>, where the
+ * fraction is the annual rate divided by 12, e.g. 2% a year is 2 / 1200.
+ * Balances below <code>minimumBalance</code> earn nothing.
+ *
+ * While the product fits a long it is divided once and rounded half-even
+ * from the remainder with sign masks instead of branches, as the remainders
+ * of a batch of balances are random. Beyond that the full 128 bit product is
+ * formed with a multiply-high and divided digit by digit, so the result is
+ * exact for every long balance.
+ */
+class ScaledRateInterestCalculation implements FixedPointInterestStrategy {
+
+	private final long numerator;
+	private final long denominator;
+	private final long minimumBalance;
+	// largest |balance| whose product with the numerator fits in a long
+	private final long longLimit;
+
+	public ScaledRateInterestCalculation(long numerator, long denominator, long minimumBalance) {
+		// a monthly rate of at most 100% keeps every result within a long
+		if (numerator < 0 || denominator <= 0 || denominator > Integer.MAX_VALUE || numerator > denominator) {
+			throw new IllegalArgumentException("Rate must be a fraction in [0, 1] with a 31 bit denominator");
+		}
+		this.numerator = numerator;
+		this.denominator = denominator;
+		this.minimumBalance = minimumBalance;
+		this.longLimit = numerator == 0 ? Long.MAX_VALUE : Long.MAX_VALUE / numerator;
+	}
+
+	@Override
+	public long calculateInterest(long balance) {
+		if (balance < minimumBalance) {
+			return 0;
+		}
+		if (balance <= longLimit && balance >= -longLimit) {
+			return divideHalfEven(balance * numerator, denominator);
+		}
+		return divideHalfEven128(Math.multiplyHigh(balance, numerator), balance * numerator, denominator);
+	}
+
+	// divisor must be positive and below 2^62
+	static long divideHalfEven(long dividend, long divisor) {
+		long quotient = dividend / divisor;
+		long remainder = dividend - quotient * divisor;
+		// all ones for a negative remainder, the quotient then moves down
+		long negative = remainder >> 63;
+		// twice |remainder|, plus one when the quotient is odd so a tie rounds
+		// to even
+		long twice = ((remainder ^ negative) - negative) * 2 + (quotient & 1);
+		// all ones when the quotient moves away from zero
+		long away = (divisor - twice) >> 63;
+		return quotient - ((away ^ negative) - negative);
+	}
+
+	// signed 128 bit (high, low) divided by a positive 31 bit divisor
+	static long divideHalfEven128(long high, long low, long divisor) {
+		boolean negative = high < 0;
+		if (negative) {
+			low = -low;
+			high = ~high + (low == 0 ? 1 : 0);
+		}
+		long remainder = 0;
+		long quotient = 0;
+		long[] digits = { high >>> 32, high & 0xFFFFFFFFL, low >>> 32, low & 0xFFFFFFFFL };
+		for (long digit : digits) {
+			// remainder < 2^31, so the partial dividend stays below 2^63
+			long current = (remainder << 32) | digit;
+			quotient = (quotient << 32) | (current / divisor);
+			remainder = current % divisor;
+		}
+		long twice = remainder * 2;
+		if (twice > divisor || (twice == divisor && (quotient & 1) != 0)) {
+			quotient++;
+		}
+		return negative ? -quotient : quotient;
+	}
+}
+
+class FixedPointInterestStrategyFactory {
+	private final FixedPointInterestStrategy currentAccountInterestCalculationStrategy = new ScaledRateInterestCalculation(
+			2, 1200, Long.MIN_VALUE);
+	private final FixedPointInterestStrategy savingsAccountInterestCalculationStrategy = new ScaledRateInterestCalculation(
+			4, 1200, Long.MIN_VALUE);
+	private final FixedPointInterestStrategy moneyMarketAccountInterestCalculationStrategy = new ScaledRateInterestCalculation(
+			6, 1200, Long.MIN_VALUE);
+	// 7.5% a year from R100 000.00 (10 000 000 cents) upwards
+	private final FixedPointInterestStrategy highRollerMoneyMarketAccountInterestCalculationStrategy = new ScaledRateInterestCalculation(
+			75, 12000, 10_000_000L);
+	private final FixedPointInterestStrategy noInterestCalculationStrategy = new ScaledRateInterestCalculation(0, 1,
+			Long.MIN_VALUE);
+
+	public FixedPointInterestStrategy getInterestCalculationStrategy(AccountTypes accountType) {
+		switch (accountType) {
+		case CURRENT:
+			return currentAccountInterestCalculationStrategy;
+		case SAVINGS:
+			return savingsAccountInterestCalculationStrategy;
+		case STANDARD_MONEY_MARKET:
+			return moneyMarketAccountInterestCalculationStrategy;
+		case HIGH_ROLLER_MONEY_MARKET:
+			return highRollerMoneyMarketAccountInterestCalculationStrategy;
+		default:
+			return noInterestCalculationStrategy;
+		}
+	}
+}
+
+/**
+ * Checks every fixed-point strategy against a BigDecimal reference (including
+ * balances that need the 128 bit path) and compares bulk throughput with the
+ * double strategies.
+ */
+public class FixedPointInterestBenchmark {
+
+	private static final int ACCOUNTS = 5_000_000;
+
+	public static void main(String[] args) {
+		FixedPointInterestStrategyFactory fixedFactory = new FixedPointInterestStrategyFactory();
+		InterestCalculationStrategyFactory doubleFactory = new InterestCalculationStrategyFactory();
+		Random random = new Random(3);
+
+		long[] balances = new long[ACCOUNTS];
+		double[] doubleBalances = new double[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			// mostly realistic cents, some anywhere in the long range
+			balances[i] = i % 1000 == 0 ? random.nextLong() : random.nextInt(20_000_000) - 1_000_000;
+			doubleBalances[i] = balances[i] / 100.0;
+		}
+		long[] interest = new long[ACCOUNTS];
+		double[] doubleInterest = new double[ACCOUNTS];
+
+		long[][] rates = { { 2, 1200, Long.MIN_VALUE }, { 4, 1200, Long.MIN_VALUE }, { 6, 1200, Long.MIN_VALUE },
+				{ 75, 12000, 10_000_000L } };
+		AccountTypes[] types = AccountTypes.values();
+		for (int t = 0; t < types.length; t++) {
+			FixedPointInterestStrategy fixed = fixedFactory.getInterestCalculationStrategy(types[t]);
+			fixed.calculateInterest(balances, interest, 0, ACCOUNTS);
+			long mismatches = 0;
+			long driftCents = 0;
+			for (int i = 0; i < ACCOUNTS; i++) {
+				long expected = balances[i] < rates[t][2] ? 0
+						: BigDecimal.valueOf(balances[i]).multiply(BigDecimal.valueOf(rates[t][0]))
+								.divide(BigDecimal.valueOf(rates[t][1]), 0, RoundingMode.HALF_EVEN).longValueExact();
+				if (interest[i] != expected) {
+					mismatches++;
+				}
+				if (Math.abs(balances[i]) < 1_000_000_000_000L && balances[i] >= rates[t][2]) {
+					double viaDouble = doubleFactory.getInterestCalculationStrategy(types[t])
+							.calculateInterest(doubleBalances[i]) * 100;
+					driftCents += Math.round(viaDouble) != expected ? 1 : 0;
+				}
+			}
+			System.out.printf("%-24s BigDecimal mismatches: %d, double off by a cent: %,d%n", types[t], mismatches,
+					driftCents);
+		}
+
+		FixedPointInterestStrategy fixed = fixedFactory.getInterestCalculationStrategy(AccountTypes.SAVINGS);
+		InterestCalculationStrategy floating = doubleFactory.getInterestCalculationStrategy(AccountTypes.SAVINGS);
+		for (int round = 1; round <= 5; round++) {
+			long start = System.nanoTime();
+			floating.calculateInterest(doubleBalances, doubleInterest, 0, ACCOUNTS);
+			long doubleNs = System.nanoTime() - start;
+			start = System.nanoTime();
+			fixed.calculateInterest(balances, interest, 0, ACCOUNTS);
+			long fixedNs = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < ACCOUNTS; i++) {
+				BigDecimal.valueOf(balances[i]).multiply(BigDecimal.valueOf(4))
+						.divide(BigDecimal.valueOf(1200), 0, RoundingMode.HALF_EVEN).longValue();
+			}
+			long bigNs = System.nanoTime() - start;
+			System.out.printf("round %d: double %.2f ns, fixed point %.2f ns, BigDecimal %.2f ns per account%n", round,
+					(double) doubleNs / ACCOUNTS, (double) fixedNs / ACCOUNTS, (double) bigNs / ACCOUNTS);
+		}
+	}
+}
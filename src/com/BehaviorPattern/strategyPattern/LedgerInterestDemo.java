@@ -0,0 +1,254 @@
+package com.BehaviorPattern.strategyPattern;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Account ledger file with fixed-width little-endian records, accessed through
+ * memory-mapped windows so ledgers larger than the heap can be processed.
+ *
+ * <pre>
+ * header (64 bytes)  magic int, version int, record count long,
+ *                    run month int, pad int, checkpoint long
+ * record (32 bytes)  account id long, balance double, interest double,
+ *                    AccountTypes ordinal byte, 7 bytes padding
+ * </pre>
+ *
+ * The checkpoint is the index of the first record the month-end run given by
+ * <i>run month</i> (yyyymm) has not completed yet.
+ *
+ * @author nitin
+ *
+ */
+class MappedLedger implements Closeable {
+
+	static final int MAGIC = 0x4c444752; // "LDGR"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	static final int RECORD_SIZE = 32;
+
+	static final int ID = 0;
+	static final int BALANCE = 8;
+	static final int INTEREST = 16;
+	static final int TYPE = 24;
+
+	private static final int COUNT_FIELD = 8;
+	private static final int MONTH_FIELD = 16;
+	private static final int CHECKPOINT_FIELD = 24;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final long recordCount;
+
+	interface AccountSource {
+		/** Fills the record buffer (positioned at the record) for account i. */
+		void write(long i, ByteBuffer record);
+	}
+
+	public static MappedLedger create(Path file, long recordCount, AccountSource accounts) throws IOException {
+		try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(recordCount).putInt(0).putInt(0).putLong(0);
+			buffer.position(HEADER_SIZE);
+			for (long i = 0; i < recordCount; i++) {
+				if (buffer.remaining() < RECORD_SIZE) {
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						out.write(buffer);
+					}
+					buffer.clear();
+				}
+				int start = buffer.position();
+				accounts.write(i, buffer);
+				buffer.position(start + RECORD_SIZE);
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+			out.force(true);
+		}
+		return new MappedLedger(file);
+	}
+
+	public MappedLedger(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+			throw new IOException("Not a version " + VERSION + " ledger: " + file);
+		}
+		this.recordCount = header.getLong(COUNT_FIELD);
+		if (channel.size() < HEADER_SIZE + recordCount * RECORD_SIZE) {
+			throw new IOException("Ledger is truncated: " + file);
+		}
+	}
+
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	public int getRunMonth() {
+		return header.getInt(MONTH_FIELD);
+	}
+
+	public long getCheckpoint() {
+		return header.getLong(CHECKPOINT_FIELD);
+	}
+
+	/** Durably records that every record before <code>next</code> is done. */
+	void checkpoint(int month, long next) {
+		header.putInt(MONTH_FIELD, month);
+		header.putLong(CHECKPOINT_FIELD, next);
+		header.force();
+	}
+
+	/** Maps records [first, first + count) read-write. */
+	MappedByteBuffer map(long first, int count) throws IOException {
+		MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + first * RECORD_SIZE,
+				(long) count * RECORD_SIZE);
+		window.order(ByteOrder.LITTLE_ENDIAN);
+		return window;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
+
+/**
+ * Streams over a {@link MappedLedger} window by window, computes the monthly
+ * interest of every account with the existing strategies (through
+ * {@link BulkInterestCalculator}) and writes it into the record's interest
+ * field.
+ *
+ * After every window the data is forced to disk first and then the checkpoint,
+ * so a run that dies part way resumes at the last completed window. Interest is
+ * a pure function of the balance, so redoing a window that was written but not
+ * checkpointed yields the same bytes.
+ */
+class MonthEndInterestRun {
+
+	// 2^20 records = 32 MB per mapped window
+	private static final int WINDOW_RECORDS = 1 << 20;
+
+	private final MappedLedger ledger;
+	private final BulkInterestCalculator calculator = new BulkInterestCalculator();
+
+	// columns of one whole window, reused for every window so the calculator
+	// can split each of them over its fork-join pool
+	private final byte[] types;
+	private final double[] balances;
+	private final double[] interest;
+	private final BulkInterestCalculator.Scratch scratch;
+
+	MonthEndInterestRun(MappedLedger ledger) {
+		this.ledger = ledger;
+		int columns = (int) Math.min(WINDOW_RECORDS, ledger.getRecordCount());
+		this.types = new byte[columns];
+		this.balances = new double[columns];
+		this.interest = new double[columns];
+		this.scratch = new BulkInterestCalculator.Scratch(columns);
+	}
+
+	/**
+	 * Runs (or resumes) the month-end job for <code>month</code>.
+	 *
+	 * @param maxRecords stop after about this many records, to split a run over
+	 *                   several calls
+	 * @return records processed by this call
+	 */
+	public long run(int month, long maxRecords) throws IOException {
+		long next = ledger.getRunMonth() == month ? ledger.getCheckpoint() : 0;
+		long total = ledger.getRecordCount();
+		long processed = 0;
+		while (next < total && processed < maxRecords) {
+			int count = (int) Math.min(WINDOW_RECORDS, total - next);
+			MappedByteBuffer window = ledger.map(next, count);
+			processWindow(window, count);
+			window.force();
+			next += count;
+			processed += count;
+			ledger.checkpoint(month, next);
+		}
+		return processed;
+	}
+
+	private void processWindow(MappedByteBuffer window, int count) {
+		for (int i = 0; i < count; i++) {
+			int record = i * MappedLedger.RECORD_SIZE;
+			types[i] = window.get(record + MappedLedger.TYPE);
+			balances[i] = window.getDouble(record + MappedLedger.BALANCE);
+		}
+		calculator.calculateInterest(types, balances, interest, count, scratch);
+		for (int i = 0; i < count; i++) {
+			window.putDouble(i * MappedLedger.RECORD_SIZE + MappedLedger.INTEREST, interest[i]);
+		}
+	}
+}
+
+/**
+ * Writes a ledger, runs the month-end job, "crashes" it half way, resumes it
+ * and checks every record against {@link InterestCalculatorUp1}.
+ */
+public class LedgerInterestDemo {
+
+	public static void main(String[] args) throws IOException {
+		long accounts = args.length > 0 ? Long.parseLong(args[0]) : 5_000_000;
+		Path file = args.length > 1 ? Paths.get(args[1]) : Files.createTempFile("ledger", ".dat");
+		AccountTypes[] types = AccountTypes.values();
+		Random random = new Random(11);
+
+		long start = System.nanoTime();
+		try (MappedLedger ledger = MappedLedger.create(file, accounts, (i, record) -> {
+			record.putLong(i).putDouble(random.nextDouble() * 200_000).putDouble(0)
+					.put((byte) random.nextInt(types.length));
+		})) {
+			System.out.printf("wrote %,d accounts in %d ms%n", accounts, (System.nanoTime() - start) / 1_000_000);
+
+			MonthEndInterestRun run = new MonthEndInterestRun(ledger);
+			long done = run.run(202610, accounts / 2);
+			System.out.printf("interrupted run stopped after %,d records, checkpoint %,d%n", done,
+					ledger.getCheckpoint());
+		}
+
+		try (MappedLedger ledger = new MappedLedger(file)) {
+			start = System.nanoTime();
+			long done = new MonthEndInterestRun(ledger).run(202610, Long.MAX_VALUE);
+			long elapsed = System.nanoTime() - start;
+			System.out.printf("resumed run processed %,d records in %d ms (%.0f MB/s)%n", done, elapsed / 1_000_000,
+					(double) done * MappedLedger.RECORD_SIZE * 1000 / elapsed);
+
+			InterestCalculatorUp1 calculator = new InterestCalculatorUp1();
+			long mismatches = 0;
+			for (long first = 0; first < accounts; first += 1 << 20) {
+				int count = (int) Math.min(1 << 20, accounts - first);
+				MappedByteBuffer window = ledger.map(first, count);
+				for (int i = 0; i < count; i++) {
+					int record = i * MappedLedger.RECORD_SIZE;
+					double expected = calculator.calculateInterest(types[window.get(record + MappedLedger.TYPE)],
+							window.getDouble(record + MappedLedger.BALANCE));
+					if (window.getDouble(record + MappedLedger.INTEREST) != expected) {
+						mismatches++;
+					}
+				}
+			}
+			System.out.println("mismatches: " + mismatches);
+		} finally {
+			if (args.length < 2) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+}
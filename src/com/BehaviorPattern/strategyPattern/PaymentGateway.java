@@ -0,0 +1,14 @@
+package com.BehaviorPattern.strategyPattern;
+
+import java.util.List;
+
+/**
+ * Gateway that charges several payments of the same {@link PaymentStrategy}
+ * type in one round trip.
+ *
+ * @author nitin
+ *
+ */
+interface PaymentGateway {
+	void payBatch(List<PaymentStrategy> strategies, int[] amounts) throws Exception;
+}
@@ -106,6 +106,15 @@ class ShoppingCart {
 		int amount = calculateTotal();
 		paymentMethod.pay(amount);
 	}
+
+	/**
+	 * Asynchronous variant of {@link #pay(PaymentStrategy)}, the returned future
+	 * completes with the amount once the processor has charged it.
+	 */
+	public java.util.concurrent.CompletableFuture<Integer> pay(PaymentStrategy paymentMethod,
+			AsyncPaymentProcessor processor) throws InterruptedException {
+		return processor.submit(paymentMethod, calculateTotal());
+	}
 }
 
 public class StrategyDesignPattern {
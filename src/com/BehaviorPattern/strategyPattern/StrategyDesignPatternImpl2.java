@@ -59,33 +59,87 @@ class InterestCalculatorUpdated1 {
 interface InterestCalculationStrategy {
 	double calculateInterest(double accountBalance); // Note the absence of an access modifier - interface methods are
 														// implicitly public.
+
+	// Bulk version for batch runs: interest[i] = calculateInterest(balances[i])
+	// for from <= i < to. Implementations override it with a tight loop the JIT
+	// can unroll and vectorize, using the same rate constant as the single
+	// calculation so both always agree.
+	default void calculateInterest(double[] balances, double[] interest, int from, int to) {
+		for (int i = from; i < to; i++) {
+			interest[i] = calculateInterest(balances[i]);
+		}
+	}
 }
 
 class CurrentAccountInterestCalculation implements InterestCalculationStrategy {
+	// 2% per annum
+	static final double MONTHLY_RATE = 0.02 / 12;
+
 	@Override
 	public double calculateInterest(double accountBalance) {
-		return accountBalance * (0.02 / 12);
+		return accountBalance * MONTHLY_RATE;
+	}
+
+	@Override
+	public void calculateInterest(double[] balances, double[] interest, int from, int to) {
+		for (int i = from; i < to; i++) {
+			interest[i] = balances[i] * MONTHLY_RATE;
+		}
 	}
 }
 
 class SavingsAccountInterestCalculation implements InterestCalculationStrategy {
+	// 4% per annum
+	static final double MONTHLY_RATE = 0.04 / 12;
+
 	@Override
 	public double calculateInterest(double accountBalance) {
-		return accountBalance * (0.04 / 12);
+		return accountBalance * MONTHLY_RATE;
+	}
+
+	@Override
+	public void calculateInterest(double[] balances, double[] interest, int from, int to) {
+		for (int i = from; i < to; i++) {
+			interest[i] = balances[i] * MONTHLY_RATE;
+		}
 	}
 }
 
 class MoneyMarketInterestCalculation implements InterestCalculationStrategy {
+	// 6% per annum
+	static final double MONTHLY_RATE = 0.06 / 12;
+
 	@Override
 	public double calculateInterest(double accountBalance) {
-		return accountBalance * (0.06 / 12);
+		return accountBalance * MONTHLY_RATE;
+	}
+
+	@Override
+	public void calculateInterest(double[] balances, double[] interest, int from, int to) {
+		for (int i = from; i < to; i++) {
+			interest[i] = balances[i] * MONTHLY_RATE;
+		}
 	}
 }
 
 class HighRollerMoneyMarketInterestCalculation implements InterestCalculationStrategy {
+	// 7.5% per annum, only paid from the minimum balance on
+	static final double MONTHLY_RATE = 0.075 / 12;
+	static final double MINIMUM_BALANCE = 100000.00;
+
 	@Override
 	public double calculateInterest(double accountBalance) {
-		return accountBalance < 100000.00 ? 0 : accountBalance * (0.075 / 12);
+		return accountBalance < MINIMUM_BALANCE ? 0 : accountBalance * MONTHLY_RATE;
+	}
+
+	@Override
+	public void calculateInterest(double[] balances, double[] interest, int from, int to) {
+		for (int i = from; i < to; i++) {
+			double balance = balances[i];
+			// kept as a plain select so the JIT can emit a conditional move,
+			// balances on both sides of the threshold are mixed in a batch
+			interest[i] = balance < MINIMUM_BALANCE ? 0 : balance * MONTHLY_RATE;
+		}
 	}
 }
 
@@ -94,6 +148,11 @@ class NoInterestCalculation implements InterestCalculationStrategy {
 	public double calculateInterest(double accountBalance) {
 		return 0;
 	}
+
+	@Override
+	public void calculateInterest(double[] balances, double[] interest, int from, int to) {
+		java.util.Arrays.fill(interest, from, to, 0);
+	}
 }
 
 class InterestCalculationStrategyFactory {
@@ -0,0 +1,19 @@
+package com.BehaviorPattern.strategyPattern;
+
+import java.util.List;
+
+/**
+ * Gateway that simply calls {@link PaymentStrategy#pay(int)} for every
+ * payment of the batch.
+ *
+ * @author nitin
+ *
+ */
+class StrategyPaymentGateway implements PaymentGateway {
+	@Override
+	public void payBatch(List<PaymentStrategy> strategies, int[] amounts) {
+		for (int i = 0; i < amounts.length; i++) {
+			strategies.get(i).pay(amounts[i]);
+		}
+	}
+}
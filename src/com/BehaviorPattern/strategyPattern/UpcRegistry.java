@@ -0,0 +1,51 @@
+package com.BehaviorPattern.strategyPattern;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns UPC codes into dense int ids, so carts can keep an int per line
+ * instead of a String reference.
+ *
+ * @author nitin
+ *
+ */
+class UpcRegistry {
+
+	static final UpcRegistry DEFAULT = new UpcRegistry();
+
+	/** Id of a UPC that was never interned. */
+	static final int ABSENT = -1;
+
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+	private final List<String> codes = new ArrayList<>();
+
+	public int intern(String upc) {
+		Integer id = ids.get(upc);
+		return id != null ? id : register(upc);
+	}
+
+	/**
+	 * @return the id of the UPC, or {@link #ABSENT} if it was never interned;
+	 *         unlike {@link #intern(String)} it does not register anything
+	 */
+	public int find(String upc) {
+		Integer id = ids.get(upc);
+		return id != null ? id : ABSENT;
+	}
+
+	private synchronized int register(String upc) {
+		Integer id = ids.get(upc);
+		if (id == null) {
+			id = codes.size();
+			codes.add(upc);
+			ids.put(upc, id);
+		}
+		return id;
+	}
+
+	public synchronized String code(int id) {
+		return codes.get(id);
+	}
+}
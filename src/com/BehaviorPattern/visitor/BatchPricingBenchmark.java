@@ -0,0 +1,279 @@
+package com.BehaviorPattern.visitor;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import com.ConcurrencyPattern.AsyncOutput;
+import com.ConcurrencyPattern.OutputSink;
+
+/**
+ * Items of a cart or catalog stored as primitive columns, one set of columns
+ * per element type. The original order is kept in <code>order</code> (book i as
+ * i, fruit i as ~i) so an itemized receipt can be produced afterwards.
+ *
+ * @author nitin
+ *
+ */
+class PricingBatch {
+
+	int[] bookPrices = new int[16];
+	String[] bookIsbns = new String[16];
+	int books;
+
+	int[] fruitPricesPerKg = new int[16];
+	int[] fruitWeights = new int[16];
+	String[] fruitNames = new String[16];
+	int fruits;
+
+	int[] order = new int[16];
+	int size;
+
+	// filled in by BatchPricingEngine#price
+	int[] bookCosts;
+	int[] fruitCosts;
+
+	/** Splits the elements into columns; the only double dispatch left. */
+	public static PricingBatch of(ItemElement... items) {
+		PricingBatch batch = new PricingBatch();
+		ShoppingCartVisitor loader = new ShoppingCartVisitor() {
+			@Override
+			public int visit(Book book) {
+				batch.addBook(book.getPrice(), book.getIsbnNumber());
+				return 0;
+			}
+
+			@Override
+			public int visit(Fruit fruit) {
+				batch.addFruit(fruit.getPricePerKg(), fruit.getWeight(), fruit.getName());
+				return 0;
+			}
+		};
+		for (ItemElement item : items) {
+			item.accept(loader);
+		}
+		return batch;
+	}
+
+	public void addBook(int price, String isbn) {
+		if (books == bookPrices.length) {
+			bookPrices = Arrays.copyOf(bookPrices, books * 2);
+			bookIsbns = Arrays.copyOf(bookIsbns, books * 2);
+		}
+		bookPrices[books] = price;
+		bookIsbns[books] = isbn;
+		append(books++);
+	}
+
+	public void addFruit(int pricePerKg, int weight, String name) {
+		if (fruits == fruitWeights.length) {
+			fruitPricesPerKg = Arrays.copyOf(fruitPricesPerKg, fruits * 2);
+			fruitWeights = Arrays.copyOf(fruitWeights, fruits * 2);
+			fruitNames = Arrays.copyOf(fruitNames, fruits * 2);
+		}
+		fruitPricesPerKg[fruits] = pricePerKg;
+		fruitWeights[fruits] = weight;
+		fruitNames[fruits] = name;
+		append(~fruits++);
+	}
+
+	private void append(int entry) {
+		if (size == order.length) {
+			order = Arrays.copyOf(order, size * 2);
+		}
+		order[size++] = entry;
+	}
+
+	public int size() {
+		return size;
+	}
+}
+
+/**
+ * Applies the rules of {@link ShoppingCartVisitorImpl} to a
+ * {@link PricingBatch} column by column: 5$ off books above 50, fruit at price
+ * per kg times weight. Each column is a straight loop without calls or
+ * unpredictable branches; batches above <code>THRESHOLD</code> items are split
+ * across cores with fork-join.
+ */
+class BatchPricingEngine {
+
+	private static final int THRESHOLD = 1 << 16;
+
+	private final ForkJoinPool pool;
+
+	public BatchPricingEngine() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public BatchPricingEngine(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Prices every item, keeping the per-item costs in the batch for
+	 * {@link #itemize(PricingBatch, AsyncOutput)}.
+	 *
+	 * @return the total cost
+	 */
+	public long price(PricingBatch batch) {
+		if (batch.bookCosts == null || batch.bookCosts.length < batch.books) {
+			batch.bookCosts = new int[batch.books];
+		}
+		if (batch.fruitCosts == null || batch.fruitCosts.length < batch.fruits) {
+			batch.fruitCosts = new int[batch.fruits];
+		}
+		if (batch.books + batch.fruits <= THRESHOLD) {
+			return priceBooks(batch, 0, batch.books) + priceFruits(batch, 0, batch.fruits);
+		}
+		// both columns at once, the fruits are forked while the books are priced
+		return pool.invoke(ForkJoinTask.adapt(() -> {
+			ColumnTask fruits = new ColumnTask(batch, false, 0, batch.fruits);
+			fruits.fork();
+			return new ColumnTask(batch, true, 0, batch.books).compute() + fruits.join();
+		}));
+	}
+
+	static long priceBooks(PricingBatch batch, int from, int to) {
+		int[] prices = batch.bookPrices;
+		int[] costs = batch.bookCosts;
+		long sum = 0;
+		for (int i = from; i < to; i++) {
+			int price = prices[i];
+			// (50 - price) >> 31 is all ones exactly when price > 50
+			int cost = price - (5 & ((50 - price) >> 31));
+			costs[i] = cost;
+			sum += cost;
+		}
+		return sum;
+	}
+
+	static long priceFruits(PricingBatch batch, int from, int to) {
+		int[] pricesPerKg = batch.fruitPricesPerKg;
+		int[] weights = batch.fruitWeights;
+		int[] costs = batch.fruitCosts;
+		long sum = 0;
+		for (int i = from; i < to; i++) {
+			int cost = pricesPerKg[i] * weights[i];
+			costs[i] = cost;
+			sum += cost;
+		}
+		return sum;
+	}
+
+	private static class ColumnTask extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+
+		private final PricingBatch batch;
+		private final boolean books;
+		private final int from;
+		private final int to;
+
+		ColumnTask(PricingBatch batch, boolean books, int from, int to) {
+			this.batch = batch;
+			this.books = books;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Long compute() {
+			if (to - from <= THRESHOLD) {
+				return books ? priceBooks(batch, from, to) : priceFruits(batch, from, to);
+			}
+			int middle = (from + to) >>> 1;
+			ColumnTask right = new ColumnTask(batch, books, middle, to);
+			right.fork();
+			long left = new ColumnTask(batch, books, from, middle).compute();
+			return left + right.join();
+		}
+	}
+
+	/**
+	 * Writes the lines {@link ShoppingCartVisitorImpl} prints, in the original
+	 * item order, from the costs of the last {@link #price(PricingBatch)}.
+	 */
+	public void itemize(PricingBatch batch, AsyncOutput out) {
+		for (int i = 0; i < batch.size; i++) {
+			int entry = batch.order[i];
+			if (entry >= 0) {
+				out.line().append("Book ISBN::").append(batch.bookIsbns[entry]).append(" cost =")
+						.append(batch.bookCosts[entry]).println();
+			} else {
+				out.line().append(batch.fruitNames[~entry]).append(" cost = ").append(batch.fruitCosts[~entry])
+						.println();
+			}
+		}
+	}
+}
+
+/**
+ * Prices a large catalog with the visitor (with and without its per item
+ * output) and with {@link BatchPricingEngine}. The visitor's lines are
+ * formatted and handed to {@link AsyncOutput} as usual, but its sink discards
+ * them, so the figure is the cost of the output path without the terminal.
+ */
+public class BatchPricingBenchmark {
+
+	private static final int ITEMS = 10_000_000;
+
+	public static void main(String[] args) {
+		PricingBatch demo = PricingBatch.of(new Book(20, "1234"), new Book(100, "5678"), new Fruit(10, 2, "Banana"),
+				new Fruit(5, 5, "Apple"));
+		BatchPricingEngine engine = new BatchPricingEngine();
+		long demoTotal = engine.price(demo);
+		engine.itemize(demo, AsyncOutput.DEFAULT);
+		AsyncOutput.DEFAULT.line().append("Total Cost = ").append(demoTotal).println();
+
+		Random random = new Random(5);
+		ItemElement[] items = new ItemElement[ITEMS];
+		for (int i = 0; i < ITEMS; i++) {
+			items[i] = random.nextBoolean() ? new Book(1 + random.nextInt(120), "isbn-" + (i & 1023))
+					: new Fruit(1 + random.nextInt(20), 1 + random.nextInt(10), "fruit-" + (i & 1023));
+		}
+		PricingBatch batch = PricingBatch.of(items);
+
+		ShoppingCartVisitor printing = new ShoppingCartVisitorImpl();
+		ShoppingCartVisitor quiet = new ShoppingCartVisitor() {
+			@Override
+			public int visit(Book book) {
+				return book.getPrice() > 50 ? book.getPrice() - 5 : book.getPrice();
+			}
+
+			@Override
+			public int visit(Fruit fruit) {
+				return fruit.getPricePerKg() * fruit.getWeight();
+			}
+		};
+
+		OutputSink stdout = AsyncOutput.DEFAULT.redirect(OutputSink.discard());
+		for (int round = 1; round <= 5; round++) {
+			// the printing visitor is far slower, time it on a slice
+			int slice = ITEMS / 100;
+			long start = System.nanoTime();
+			for (int i = 0; i < slice; i++) {
+				items[i].accept(printing);
+			}
+			long printingNs = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			long visited = 0;
+			for (ItemElement item : items) {
+				visited += item.accept(quiet);
+			}
+			long visitorNs = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			long batched = engine.price(batch);
+			long batchNs = System.nanoTime() - start;
+
+			System.out.printf(
+					"round %d: visitor + output %.2f ns/item, visitor %.2f ns/item, batch %.2f ns/item (totals equal: %b)%n",
+					round, (double) printingNs / slice, (double) visitorNs / ITEMS, (double) batchNs / ITEMS,
+					visited == batched);
+		}
+		AsyncOutput.DEFAULT.redirect(stdout);
+	}
+}
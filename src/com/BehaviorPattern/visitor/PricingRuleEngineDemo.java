@@ -0,0 +1,360 @@
+package com.BehaviorPattern.visitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+import com.ConcurrencyPattern.AsyncOutput;
+import com.ConcurrencyPattern.OutputSink;
+
+/**
+ * One pricing rule as data, e.g. parsed from a line of configuration:
+ *
+ * <pre>
+ * Book price                    cost is the book price
+ * Fruit perKg                   cost is price per kg * weight
+ * Book discount 5 above 50      5 off when the cost is above 50
+ * Fruit percent 10 from 100     10% off when the cost is 100 or more
+ * </pre>
+ *
+ * The first word names an item type and a two word rule names one of the base
+ * costs registered for that type with {@link #registerBase}. Every item type
+ * needs exactly one base rule; adjustments apply in the order they are given.
+ *
+ * @author nitin
+ *
+ */
+class PricingRule {
+
+	enum Kind {
+		BASE, DISCOUNT, PERCENT
+	}
+
+	// item types by simple name, and the base costs of every type by name
+	private static final Map<String, Class<? extends ItemElement>> TYPES = new ConcurrentHashMap<>();
+	private static final Map<Class<? extends ItemElement>, Map<String, ToIntFunction<ItemElement>>> BASES = new ConcurrentHashMap<>();
+
+	static {
+		registerBase(Book.class, "price", Book::getPrice);
+		registerBase(Fruit.class, "perKg", fruit -> fruit.getPricePerKg() * fruit.getWeight());
+	}
+
+	final Class<? extends ItemElement> type;
+	final Kind kind;
+	// only for BASE rules
+	final String baseName;
+	final ToIntFunction<ItemElement> base;
+	final int value;
+	final int threshold;
+
+	PricingRule(Class<? extends ItemElement> type, String baseName, ToIntFunction<ItemElement> base) {
+		this(type, Kind.BASE, baseName, base, 0, 0);
+	}
+
+	PricingRule(Class<? extends ItemElement> type, Kind kind, int value, int threshold) {
+		this(type, kind, null, null, value, threshold);
+	}
+
+	private PricingRule(Class<? extends ItemElement> type, Kind kind, String baseName, ToIntFunction<ItemElement> base,
+			int value, int threshold) {
+		this.type = type;
+		this.kind = kind;
+		this.baseName = baseName;
+		this.base = base;
+		this.value = value;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Makes <code>name</code> a base cost rules for <code>type</code> can use,
+	 * with the type's simple name as the first word of the rule. Rules for a
+	 * type {@link ShoppingCartVisitor} has no visit method for parse, but
+	 * {@link CompiledPricing#compile(List)} rejects them.
+	 */
+	public static <T extends ItemElement> void registerBase(Class<T> type, String name, ToIntFunction<T> cost) {
+		TYPES.put(type.getSimpleName(), type);
+		BASES.computeIfAbsent(type, t -> new ConcurrentHashMap<>()).put(name,
+				item -> cost.applyAsInt(type.cast(item)));
+	}
+
+	public static PricingRule parse(String line) {
+		String[] words = line.trim().split("\\s+");
+		Class<? extends ItemElement> type = TYPES.get(words[0]);
+		if (type == null) {
+			throw new IllegalArgumentException("Unknown item type in rule: " + line);
+		}
+		if (words.length == 2) {
+			ToIntFunction<ItemElement> base = BASES.get(type).get(words[1]);
+			if (base == null) {
+				throw new IllegalArgumentException(type.getSimpleName() + " has no " + words[1] + " pricing");
+			}
+			return new PricingRule(type, words[1], base);
+		}
+		if (words.length == 5 && words[1].equals("discount") && words[3].equals("above")) {
+			return new PricingRule(type, Kind.DISCOUNT, Integer.parseInt(words[2]), Integer.parseInt(words[4]));
+		}
+		if (words.length == 5 && words[1].equals("percent") && words[3].equals("from")) {
+			return new PricingRule(type, Kind.PERCENT, Integer.parseInt(words[2]), Integer.parseInt(words[4]));
+		}
+		throw new IllegalArgumentException("Cannot parse pricing rule: " + line);
+	}
+
+	/** The rule in the form {@link #parse(String)} reads. */
+	@Override
+	public String toString() {
+		String name = type.getSimpleName();
+		switch (kind) {
+		case BASE:
+			return name + " " + baseName;
+		case DISCOUNT:
+			return name + " discount " + value + " above " + threshold;
+		default:
+			return name + " percent " + value + " from " + threshold;
+		}
+	}
+}
+
+/**
+ * Pricing rules compiled into one lambda chain per item type. It is a
+ * {@link ShoppingCartVisitor}, so <code>item.accept(pricing)</code> picks the
+ * chain of the item's type with the usual double dispatch, and the rules are
+ * not interpreted again per item.
+ */
+class CompiledPricing implements ShoppingCartVisitor {
+
+	/** The rules {@link ShoppingCartVisitorImpl} has hard-coded. */
+	static final CompiledPricing DEFAULT = compile("Book price", "Book discount 5 above 50", "Fruit perKg");
+
+	private final ToIntFunction<ItemElement> books;
+	private final ToIntFunction<ItemElement> fruits;
+
+	private CompiledPricing(ToIntFunction<ItemElement> books, ToIntFunction<ItemElement> fruits) {
+		this.books = books;
+		this.fruits = fruits;
+	}
+
+	public static CompiledPricing compile(String... rules) {
+		List<PricingRule> parsed = new ArrayList<>(rules.length);
+		for (String rule : rules) {
+			parsed.add(PricingRule.parse(rule));
+		}
+		return compile(parsed);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if a rule is for a type without a visit
+	 *                                  method, or a visited type has no base
+	 *                                  rule or more than one
+	 */
+	public static CompiledPricing compile(List<PricingRule> rules) {
+		for (PricingRule rule : rules) {
+			if (rule.type != Book.class && rule.type != Fruit.class) {
+				throw new IllegalArgumentException("No visitor entry for the type of rule: " + rule);
+			}
+		}
+		return new CompiledPricing(compile(rules, Book.class), compile(rules, Fruit.class));
+	}
+
+	private static ToIntFunction<ItemElement> compile(List<PricingRule> rules, Class<? extends ItemElement> type) {
+		ToIntFunction<ItemElement> base = null;
+		IntUnaryOperator adjust = null;
+		for (PricingRule rule : rules) {
+			if (rule.type != type) {
+				continue;
+			}
+			switch (rule.kind) {
+			case BASE:
+				if (base != null) {
+					throw new IllegalArgumentException("More than one base rule for " + type.getSimpleName());
+				}
+				base = rule.base;
+				break;
+			default:
+				IntUnaryOperator step = adjustment(rule);
+				adjust = adjust == null ? step : adjust.andThen(step);
+			}
+		}
+		if (base == null) {
+			throw new IllegalArgumentException("No base rule for " + type.getSimpleName());
+		}
+		if (adjust == null) {
+			return base;
+		}
+		ToIntFunction<ItemElement> cost = base;
+		IntUnaryOperator adjustments = adjust;
+		return item -> adjustments.applyAsInt(cost.applyAsInt(item));
+	}
+
+	private static IntUnaryOperator adjustment(PricingRule rule) {
+		int value = rule.value;
+		int threshold = rule.threshold;
+		if (rule.kind == PricingRule.Kind.DISCOUNT) {
+			return cost -> cost > threshold ? cost - value : cost;
+		}
+		return cost -> cost >= threshold ? cost - cost * value / 100 : cost;
+	}
+
+	@Override
+	public int visit(Book book) {
+		return books.applyAsInt(book);
+	}
+
+	@Override
+	public int visit(Fruit fruit) {
+		return fruits.applyAsInt(fruit);
+	}
+}
+
+/**
+ * Cart that remembers the cost of every item and the running total, so adding,
+ * removing or replacing one item reprices only that item. Only a change of the
+ * rules reprices the whole cart.
+ */
+class PricedCart {
+
+	private ItemElement[] items = new ItemElement[16];
+	private int[] costs = new int[16];
+	private int size;
+	private long total;
+	private CompiledPricing pricing;
+
+	public PricedCart(CompiledPricing pricing) {
+		this.pricing = pricing;
+	}
+
+	/** @return the position of the item, valid until an item is removed */
+	public int add(ItemElement item) {
+		if (size == items.length) {
+			items = Arrays.copyOf(items, size * 2);
+			costs = Arrays.copyOf(costs, size * 2);
+		}
+		int cost = item.accept(pricing);
+		items[size] = item;
+		costs[size] = cost;
+		total += cost;
+		return size++;
+	}
+
+	public void replace(int position, ItemElement item) {
+		checkPosition(position);
+		int cost = item.accept(pricing);
+		total += cost - costs[position];
+		items[position] = item;
+		costs[position] = cost;
+	}
+
+	/** Removes the item, the last item takes its position. */
+	public void remove(int position) {
+		checkPosition(position);
+		total -= costs[position];
+		int last = --size;
+		items[position] = items[last];
+		costs[position] = costs[last];
+		items[last] = null;
+	}
+
+	public void setPricing(CompiledPricing pricing) {
+		this.pricing = pricing;
+		long sum = 0;
+		for (int i = 0; i < size; i++) {
+			costs[i] = items[i].accept(pricing);
+			sum += costs[i];
+		}
+		total = sum;
+	}
+
+	public int cost(int position) {
+		checkPosition(position);
+		return costs[position];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	private void checkPosition(int position) {
+		if (position < 0 || position >= size) {
+			throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size);
+		}
+	}
+}
+
+/**
+ * Checks the compiled default rules against {@link ShoppingCartVisitorImpl} and
+ * compares repricing a large cart after a single change. The visitor prints
+ * every item, its lines go to a discarding sink while it runs.
+ */
+public class PricingRuleEngineDemo {
+
+	private static final int ITEMS = 1_000_000;
+
+	public static void main(String[] args) {
+		PricedCart cart = new PricedCart(CompiledPricing.DEFAULT);
+		cart.add(new Book(20, "1234"));
+		cart.add(new Book(100, "5678"));
+		cart.add(new Fruit(10, 2, "Banana"));
+		cart.add(new Fruit(5, 5, "Apple"));
+		System.out.println("Total Cost = " + cart.getTotal());
+		cart.setPricing(CompiledPricing.compile("Book price", "Book discount 5 above 50", "Fruit perKg",
+				"Fruit percent 10 from 25"));
+		System.out.println("Total Cost with 10% off fruit from 25 = " + cart.getTotal());
+
+		Random random = new Random(9);
+		ItemElement[] items = new ItemElement[ITEMS];
+		ShoppingCartVisitor reference = new ShoppingCartVisitorImpl();
+		PricedCart large = new PricedCart(CompiledPricing.DEFAULT);
+		for (int i = 0; i < ITEMS; i++) {
+			items[i] = random.nextBoolean() ? new Book(1 + random.nextInt(120), "isbn")
+					: new Fruit(1 + random.nextInt(20), 1 + random.nextInt(10), "fruit");
+			large.add(items[i]);
+		}
+
+		OutputSink stdout = AsyncOutput.DEFAULT.redirect(OutputSink.discard());
+		int mismatches = 0;
+		for (int i = 0; i < ITEMS; i++) {
+			if (items[i].accept(reference) != large.cost(i)) {
+				mismatches++;
+			}
+		}
+		System.out.printf("compiled default rules vs ShoppingCartVisitorImpl: %d mismatches in %,d items%n",
+				mismatches, ITEMS);
+
+		int changes = 200;
+		// every re-walk formats a line per item, so only a few are timed
+		int rewalks = 5;
+		for (int round = 1; round <= 3; round++) {
+			long start = System.nanoTime();
+			for (int c = 0; c < rewalks; c++) {
+				items[c] = new Book(c + round, "changed");
+				for (ItemElement item : items) {
+					item.accept(reference);
+				}
+			}
+			long rewalkNs = (System.nanoTime() - start) / rewalks;
+
+			start = System.nanoTime();
+			for (int c = 0; c < changes; c++) {
+				items[c] = new Book(c + round, "changed");
+				large.replace(c, items[c]);
+			}
+			long cachedNs = (System.nanoTime() - start) / changes;
+
+			long rewalked = 0;
+			for (ItemElement item : items) {
+				rewalked += item.accept(reference);
+			}
+			System.out.printf("round %d: re-walk %,d ns per change, cached %,d ns per change (totals equal: %b)%n",
+					round, rewalkNs, cachedNs, rewalked == large.getTotal());
+		}
+		AsyncOutput.DEFAULT.redirect(stdout);
+	}
+}
@@ -1,5 +1,7 @@
 package com.BehaviorPattern.visitor;
 
+import com.ConcurrencyPattern.AsyncOutput;
+
 /**
  * Visitor Design Pattern
  * 
@@ -89,14 +91,15 @@ class ShoppingCartVisitorImpl implements ShoppingCartVisitor {
 			cost = book.getPrice() - 5;
 		} else
 			cost = book.getPrice();
-		System.out.println("Book ISBN::" + book.getIsbnNumber() + " cost =" + cost);
+		AsyncOutput.DEFAULT.line().append("Book ISBN::").append(book.getIsbnNumber()).append(" cost =").append(cost)
+				.println();
 		return cost;
 	}
 
 	@Override
 	public int visit(Fruit fruit) {
 		int cost = fruit.getPricePerKg() * fruit.getWeight();
-		System.out.println(fruit.getName() + " cost = " + cost);
+		AsyncOutput.DEFAULT.line().append(fruit.getName()).append(" cost = ").append(cost).println();
 		return cost;
 	}
 
@@ -109,7 +112,7 @@ public class ShoppingCurtVisitorDemo {
 				new Fruit(10, 2, "Banana"), new Fruit(5, 5, "Apple") };
 
 		int total = calculatePrice(items);
-		System.out.println("Total Cost = " + total);
+		AsyncOutput.DEFAULT.line().append("Total Cost = ").append(total).println();
 	}
 
 	private static int calculatePrice(ItemElement[] items) {
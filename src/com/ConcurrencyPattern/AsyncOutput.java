@@ -0,0 +1,383 @@
+package com.ConcurrencyPattern;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous line output. Threads format a line into their own reusable
+ * {@link Line} buffer (integers are written digit by digit, no Strings are
+ * created) and copy it into a lock-free multi-producer ring buffer; a single
+ * writer thread drains the ring in batches into an {@link OutputSink}.
+ *
+ * <pre>
+ * AsyncOutput.DEFAULT.line().append("Dispensing ").append(num).append(" 50$ note").println();
+ * </pre>
+ *
+ * The ring is made of fixed size slots. A producer claims as many consecutive
+ * slots as its line needs with one <code>getAndAdd</code>, waits until the
+ * writer has freed them (this is the backpressure when the sink is slower than
+ * the producers), copies the bytes and publishes every slot with its sequence
+ * number. Lines of one thread therefore keep their order, and lines are never
+ * interleaved.
+ *
+ * Characters are written as UTF-8, an unpaired surrogate becomes '?'.
+ *
+ * Once the output is closed, lines are no longer queued: the calling thread
+ * waits for the writer to finish and writes the line to the sink itself, or
+ * drops it silently when the sink is closed.
+ *
+ * @author nitin
+ *
+ */
+public final class AsyncOutput implements Closeable {
+
+	private static final int SLOT_SIZE = 128;
+	// added to claimed by close(), a producer whose claim carries it writes
+	// its line directly
+	private static final long CLOSED = 1L << 62;
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	/** Shared output to stdout, drained on JVM shutdown. */
+	public static final AsyncOutput DEFAULT = new AsyncOutput(OutputSink.stdout(), 1 << 12, 1 << 16);
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(DEFAULT::closeQuietly, "async-output-shutdown"));
+	}
+
+	private volatile OutputSink sink;
+	private final int mask;
+	private final byte[] slots;
+	private final int[] lengths;
+	// sequence + 1 of the line chunk a slot holds, 0 while never written
+	private final AtomicLongArray published;
+	private final AtomicLong claimed = new AtomicLong();
+	private volatile long consumed;
+	private volatile long written;
+	// claimed at the time of close(), the writer drains up to here
+	private volatile long end = Long.MAX_VALUE;
+	private volatile boolean writerParked;
+	private final ByteBuffer batch;
+	private final Thread writer;
+	private final ThreadLocal<Line> lines = ThreadLocal.withInitial(() -> new Line(this));
+
+	/**
+	 * @param capacity  number of {@value #SLOT_SIZE} byte slots, a power of two
+	 * @param batchSize bytes handed to the sink per write
+	 */
+	public AsyncOutput(OutputSink sink, int capacity, int batchSize) {
+		if (Integer.bitCount(capacity) != 1 || batchSize < SLOT_SIZE) {
+			throw new IllegalArgumentException("Capacity must be a power of two and batch size at least " + SLOT_SIZE);
+		}
+		this.sink = sink;
+		this.mask = capacity - 1;
+		this.slots = new byte[capacity * SLOT_SIZE];
+		this.lengths = new int[capacity];
+		this.published = new AtomicLongArray(capacity);
+		this.batch = ByteBuffer.allocateDirect(batchSize);
+		this.writer = new Thread(this::drain, "async-output");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/** The calling thread's line buffer, empty. */
+	public Line line() {
+		Line line = lines.get();
+		line.length = 0;
+		return line;
+	}
+
+	void publish(byte[] bytes, int length) {
+		int chunks = Math.max(1, (length + SLOT_SIZE - 1) / SLOT_SIZE);
+		long first = claimed.getAndAdd(chunks);
+		if (first >= CLOSED) {
+			writeDirectly(bytes, length);
+			return;
+		}
+		for (int c = 0; c < chunks; c++) {
+			long sequence = first + c;
+			// wait for the writer to free the slot
+			for (int spins = 0; sequence - consumed > mask; spins++) {
+				if (!writer.isAlive()) {
+					// the writer failed, none of the chunks will be written
+					writeDirectly(bytes, length);
+					return;
+				}
+				if (spins < 100) {
+					Thread.yield();
+				} else {
+					LockSupport.parkNanos(10_000);
+				}
+			}
+			int slot = (int) (sequence & mask);
+			int offset = c * SLOT_SIZE;
+			int chunk = Math.min(SLOT_SIZE, length - offset);
+			System.arraycopy(bytes, offset, slots, slot * SLOT_SIZE, chunk);
+			lengths[slot] = chunk;
+			// a volatile store, so the check of writerParked below cannot move
+			// before it and miss a parking writer
+			published.set(slot, sequence + 1);
+		}
+		if (writerParked) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	private void drain() {
+		long next = 0;
+		while (next < end) {
+			int slot = (int) (next & mask);
+			if (published.get(slot) == next + 1) {
+				if (batch.remaining() < SLOT_SIZE) {
+					writeBatch(next);
+				}
+				batch.put(slots, slot * SLOT_SIZE, lengths[slot]);
+				consumed = ++next;
+				continue;
+			}
+			if (batch.position() > 0) {
+				writeBatch(next);
+				continue;
+			}
+			writerParked = true;
+			if (published.get(slot) != next + 1) {
+				LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+			}
+			writerParked = false;
+		}
+		if (batch.position() > 0) {
+			writeBatch(next);
+		}
+	}
+
+	private void writeBatch(long next) {
+		batch.flip();
+		try {
+			sink.write(batch);
+		} catch (IOException e) {
+			// nothing sensible to report to, the output is lost
+		}
+		batch.clear();
+		written = next;
+	}
+
+	// used once the writer is done, threads take turns at the sink
+	private void writeDirectly(byte[] bytes, int length) {
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		synchronized (slots) {
+			try {
+				sink.write(ByteBuffer.wrap(bytes, 0, length));
+			} catch (IOException e) {
+				// the sink is closed, the line is dropped
+			}
+		}
+	}
+
+	/** Waits until every line published so far has reached the sink. */
+	public void flush() {
+		long target = Math.min(claimed.get(), end);
+		while (written < target && writer.isAlive()) {
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(50_000);
+		}
+	}
+
+	/**
+	 * Flushes what was published so far to the current sink and sends later
+	 * lines to <code>sink</code>.
+	 *
+	 * @return the previous sink, which is not closed
+	 */
+	public OutputSink redirect(OutputSink sink) {
+		flush();
+		OutputSink previous = this.sink;
+		this.sink = sink;
+		return previous;
+	}
+
+	/** Drains the remaining lines and closes the sink. */
+	@Override
+	public void close() throws IOException {
+		long claims = claimed.get();
+		while (claims < CLOSED && !claimed.compareAndSet(claims, claims + CLOSED)) {
+			claims = claimed.get();
+		}
+		if (claims >= CLOSED) {
+			return;
+		}
+		end = claims;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		sink.close();
+	}
+
+	private void closeQuietly() {
+		try {
+			close();
+		} catch (IOException e) {
+			// shutting down
+		}
+	}
+
+	/**
+	 * Per-thread reusable line buffer, valid until the next {@link #println()} or
+	 * {@link AsyncOutput#line()} of the same thread.
+	 */
+	public static final class Line {
+		private static final byte[] DIGITS = "0123456789ABCDEF".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+		private final AsyncOutput output;
+		private byte[] bytes = new byte[SLOT_SIZE];
+		private int length;
+
+		Line(AsyncOutput output) {
+			this.output = output;
+		}
+
+		public Line append(CharSequence text) {
+			if (text == null) {
+				return append("null");
+			}
+			int n = text.length();
+			ensure(n);
+			for (int i = 0; i < n; i++) {
+				char c = text.charAt(i);
+				if (c < 0x80) {
+					bytes[length++] = (byte) c;
+					continue;
+				}
+				// the ASCII fast path above counts on one byte per char left
+				ensure(4 + n - i);
+				if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+					encode(Character.toCodePoint(c, text.charAt(++i)));
+				} else {
+					encode(c);
+				}
+			}
+			return this;
+		}
+
+		public Line append(char c) {
+			ensure(3);
+			if (c < 0x80) {
+				bytes[length++] = (byte) c;
+			} else {
+				encode(c);
+			}
+			return this;
+		}
+
+		// UTF-8 of a code point from 0x80 up, room for it is ensured by the caller
+		private void encode(int codePoint) {
+			if (codePoint < 0x800) {
+				bytes[length++] = (byte) (0xC0 | codePoint >> 6);
+			} else if (codePoint < 0x10000) {
+				if (Character.isSurrogate((char) codePoint)) {
+					bytes[length++] = '?';
+					return;
+				}
+				bytes[length++] = (byte) (0xE0 | codePoint >> 12);
+				bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+			} else {
+				bytes[length++] = (byte) (0xF0 | codePoint >> 18);
+				bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+				bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+			}
+			bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+		}
+
+		public Line append(int value) {
+			return append((long) value);
+		}
+
+		public Line append(long value) {
+			if (value == Long.MIN_VALUE) {
+				return append("-9223372036854775808");
+			}
+			ensure(20);
+			if (value < 0) {
+				bytes[length++] = '-';
+				value = -value;
+			}
+			int digits = 1;
+			while (digits < 19 && value >= POWERS_OF_TEN[digits]) {
+				digits++;
+			}
+			for (int i = length + digits - 1; i >= length; i--) {
+				bytes[i] = DIGITS[(int) (value % 10)];
+				value /= 10;
+			}
+			length += digits;
+			return this;
+		}
+
+		/**
+		 * The text of {@link Float#toString(float)}. A fixed number of significant
+		 * digits cannot give the shortest text that reads back as the same float,
+		 * so this is the one append that creates a String.
+		 */
+		public Line append(float value) {
+			return append(Float.toString(value));
+		}
+
+		/** Unsigned binary, like {@link Integer#toBinaryString(int)}. */
+		public Line appendBinary(int value) {
+			return appendUnsigned(value, 1);
+		}
+
+		/** Unsigned octal, like {@link Integer#toOctalString(int)}. */
+		public Line appendOctal(int value) {
+			return appendUnsigned(value, 3);
+		}
+
+		/** Unsigned hex, {@link Integer#toHexString(int)} in upper case. */
+		public Line appendHex(int value) {
+			return appendUnsigned(value, 4);
+		}
+
+		private Line appendUnsigned(int value, int shift) {
+			int digits = Math.max(1, (32 - Integer.numberOfLeadingZeros(value) + shift - 1) / shift);
+			ensure(digits);
+			int radixMask = (1 << shift) - 1;
+			for (int i = length + digits - 1; i >= length; i--) {
+				bytes[i] = DIGITS[value & radixMask];
+				value >>>= shift;
+			}
+			length += digits;
+			return this;
+		}
+
+		/** Terminates the line and hands it to the output. */
+		public void println() {
+			append('\n');
+			output.publish(bytes, length);
+			length = 0;
+		}
+
+		private void ensure(int extra) {
+			if (length + extra > bytes.length) {
+				bytes = java.util.Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.ConcurrencyPattern;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Receipt lines written by 1..8 threads through a {@link PrintStream} set up
+ * like System.out, with String concatenation as the demos do, and through
+ * {@link AsyncOutput}, both into a file. Also reports the bytes allocated per
+ * line by the producing thread.
+ *
+ * @author nitin
+ *
+ */
+public class AsyncOutputBenchmark {
+
+	private static final int LINES = 2_000_000;
+
+	interface Producer {
+		void line(int isbn, int cost);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Path printed = Files.createTempFile("println", ".txt");
+		Path async = Files.createTempFile("async", ".txt");
+		try {
+			for (int threads = 1; threads <= 8; threads *= 2) {
+				long printNs;
+				try (PrintStream out = systemOut(printed)) {
+					printNs = run(threads, (isbn, cost) -> out.println("Book ISBN::" + isbn + " cost =" + cost));
+				}
+				long asyncNs;
+				try (AsyncOutput output = new AsyncOutput(OutputSink.channel(FileChannel.open(async,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)), 1 << 12, 1 << 16)) {
+					long start = System.nanoTime();
+					run(threads, (isbn, cost) -> output.line().append("Book ISBN::").append(isbn).append(" cost =")
+							.append(cost).println());
+					output.flush();
+					asyncNs = System.nanoTime() - start;
+				}
+				System.out.printf("%d threads: println %,.0f lines/s, async %,.0f lines/s, same size: %b%n", threads,
+						LINES * 1e9 / printNs, LINES * 1e9 / asyncNs, Files.size(printed) == Files.size(async));
+			}
+
+			try (AsyncOutput output = new AsyncOutput(
+					OutputSink.channel(FileChannel.open(async, StandardOpenOption.WRITE)), 1 << 12, 1 << 16);
+					PrintStream out = systemOut(printed)) {
+				System.out.printf("allocated per line: println %.1f bytes, async %.1f bytes%n",
+						allocatedPerLine((isbn, cost) -> out.println("Book ISBN::" + isbn + " cost =" + cost)),
+						allocatedPerLine((isbn, cost) -> output.line().append("Book ISBN::").append(isbn)
+								.append(" cost =").append(cost).println()));
+			}
+		} finally {
+			Files.deleteIfExists(printed);
+			Files.deleteIfExists(async);
+		}
+	}
+
+	// configured like System.out: a 128 byte buffer flushed on every println
+	private static PrintStream systemOut(Path file) throws IOException {
+		return new PrintStream(new BufferedOutputStream(new FileOutputStream(file.toFile()), 128), true);
+	}
+
+	private static long run(int threads, Producer producer) throws InterruptedException {
+		Thread[] workers = new Thread[threads];
+		int perThread = LINES / threads;
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			int first = t * perThread;
+			workers[t] = new Thread(() -> {
+				for (int i = first; i < first + perThread; i++) {
+					producer.line(i, i % 120);
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static double allocatedPerLine(Producer producer) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long id = Thread.currentThread().getId();
+		// warm up, so the thread's line buffer and the JIT are in place
+		for (int i = 0; i < 200_000; i++) {
+			producer.line(i, i % 120);
+		}
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < LINES; i++) {
+			producer.line(i, i % 120);
+		}
+		return (double) (threads.getThreadAllocatedBytes(id) - before) / LINES;
+	}
+}
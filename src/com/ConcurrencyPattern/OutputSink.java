@@ -0,0 +1,72 @@
+package com.ConcurrencyPattern;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Destination of the batches written by {@link AsyncOutput}. Only the writer
+ * thread calls it, so implementations need not be thread safe.
+ *
+ * @author nitin
+ *
+ */
+public interface OutputSink extends Closeable {
+
+	/** Writes all remaining bytes of <code>batch</code>. */
+	void write(ByteBuffer batch) throws IOException;
+
+	/** Standard output, bypassing the lock of {@link System#out}. */
+	static OutputSink stdout() {
+		WritableByteChannel out = Channels.newChannel(new FileOutputStream(FileDescriptor.out));
+		return new OutputSink() {
+			@Override
+			public void write(ByteBuffer batch) throws IOException {
+				while (batch.hasRemaining()) {
+					out.write(batch);
+				}
+			}
+
+			@Override
+			public void close() {
+				// standard output stays open for the rest of the JVM
+			}
+		};
+	}
+
+	/** Drops everything, e.g. to keep benchmarks quiet. */
+	static OutputSink discard() {
+		return new OutputSink() {
+			@Override
+			public void write(ByteBuffer batch) {
+				batch.position(batch.limit());
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	/** Any channel, typically a {@link FileChannel} opened for append. */
+	static OutputSink channel(WritableByteChannel channel) {
+		return new OutputSink() {
+			@Override
+			public void write(ByteBuffer batch) throws IOException {
+				while (batch.hasRemaining()) {
+					channel.write(batch);
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				channel.close();
+			}
+		};
+	}
+}
@@ -0,0 +1,298 @@
+package com.ConcurrencyPattern;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link Flow.Publisher} of a stream of self-contained snapshots, such as
+ * scores, for many subscribers.
+ *
+ * Items are written once into a ring shared by all subscribers, so submitting
+ * costs the same for one subscriber or thousands. Every subscription has a
+ * cursor into the ring and a delivery task on the executor, which hands the
+ * subscriber up to <code>batchSize</code> items per run, never more than it
+ * has requested. A subscription that has caught up parks itself in a waiting
+ * queue, and the next {@link #submit(Object)} reschedules it, so the feed does
+ * not touch busy subscriptions at all.
+ *
+ * The publisher never waits for a subscriber. When a subscriber falls more
+ * than the ring's capacity behind, it skips to the oldest item still in the
+ * ring. The skipped items are counted. This is only right because every item
+ * replaces the previous ones completely.
+ *
+ * The executor may run the tasks on the calling thread, e.g.
+ * <code>Runnable::run</code>: every item is then delivered to the subscribers
+ * one after the other, in the order they subscribed, before
+ * <code>submit</code> returns.
+ *
+ * A new subscriber starts with the latest item. Requests for less than one
+ * item and exceptions thrown by the subscriber cancel its subscription, as
+ * the reactive streams rules ask.
+ *
+ * @author nitin
+ *
+ */
+public class RingPublisher<T> implements Flow.Publisher<T>, AutoCloseable {
+
+	private static final int IDLE = 0;
+	private static final int SCHEDULED = 1;
+
+	private final class RingSubscription implements Flow.Subscription, Runnable {
+		private final Flow.Subscriber<? super T> subscriber;
+		private final AtomicInteger state = new AtomicInteger(SCHEDULED);
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicBoolean finished = new AtomicBoolean();
+		// set while the subscription is in the waiting queue, so it is there once
+		private final AtomicBoolean parked = new AtomicBoolean();
+		// published when it parked, written before it is queued
+		private volatile long parkedAt;
+		private volatile boolean cancelled;
+		private volatile IllegalArgumentException invalidRequest;
+		// only touched by the delivery task
+		private long cursor;
+
+		RingSubscription(Flow.Subscriber<? super T> subscriber, long cursor) {
+			this.subscriber = subscriber;
+			this.cursor = cursor;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				invalidRequest = new IllegalArgumentException("Requested " + n + " items, must be positive");
+			} else {
+				long current;
+				do {
+					current = demand.get();
+				} while (!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+			}
+			trySchedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			finish();
+		}
+
+		void trySchedule() {
+			if (state.compareAndSet(IDLE, SCHEDULED)) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					// the executor is shutting down, nothing is delivered any more
+					state.set(IDLE);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			if (cancelled) {
+				return;
+			}
+			if (invalidRequest != null) {
+				cancel();
+				subscriber.onError(invalidRequest);
+				return;
+			}
+			long wanted = Math.min(demand.get(), batchSize);
+			int sent = 0;
+			while (sent < wanted && cursor < published && !cancelled) {
+				@SuppressWarnings("unchecked")
+				T item = (T) ring[(int) (cursor & mask)];
+				// the slot may have been reused while it was read
+				VarHandle.loadLoadFence();
+				long oldest = published - ring.length + 1;
+				if (cursor < oldest) {
+					skipped.add(oldest - cursor);
+					cursor = oldest;
+					continue;
+				}
+				cursor++;
+				sent++;
+				try {
+					subscriber.onNext(item);
+				} catch (RuntimeException e) {
+					cancel();
+					return;
+				}
+			}
+			if (sent > 0) {
+				delivered.add(sent);
+				if (demand.get() != Long.MAX_VALUE) {
+					demand.addAndGet(-sent);
+				}
+			}
+			if (closed && cursor >= published && !cancelled) {
+				cancel();
+				subscriber.onComplete();
+				return;
+			}
+			state.set(IDLE);
+			long seen = published;
+			if (cursor >= seen && demand.get() > 0 && parked.compareAndSet(false, true)) {
+				parkedAt = seen;
+				waiting.add(this);
+				// a cancel that ran before the add could not remove it
+				if (cancelled) {
+					waiting.remove(this);
+				}
+			}
+			// new items, demand or the close may have come in after the checks
+			if (!cancelled && (invalidRequest != null || closed && cursor >= published
+					|| cursor < published && demand.get() > 0)) {
+				trySchedule();
+			}
+		}
+
+		private void finish() {
+			if (finished.compareAndSet(false, true)) {
+				// do not keep a cancelled subscription until the next submit
+				waiting.remove(this);
+				Object[] current;
+				Object[] next;
+				do {
+					current = subscriptions.get();
+					int index = Arrays.asList(current).indexOf(this);
+					if (index < 0) {
+						break;
+					}
+					next = new Object[current.length - 1];
+					System.arraycopy(current, 0, next, 0, index);
+					System.arraycopy(current, index + 1, next, index, next.length - index);
+				} while (!subscriptions.compareAndSet(current, next));
+			}
+		}
+	}
+
+	private final Object[] ring;
+	private final int mask;
+	private final Executor executor;
+	private final int batchSize;
+	private volatile long published;
+	private volatile boolean closed;
+	private final ConcurrentLinkedQueue<RingSubscription> waiting = new ConcurrentLinkedQueue<>();
+	// copy-on-write array of the active RingSubscriptions
+	private final AtomicReference<Object[]> subscriptions = new AtomicReference<>(new Object[0]);
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder skipped = new LongAdder();
+
+	/**
+	 * @param capacity  items kept for subscribers that are behind, a power of two
+	 * @param batchSize most items delivered per run of a delivery task
+	 */
+	public RingPublisher(Executor executor, int capacity, int batchSize) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two");
+		}
+		this.ring = new Object[capacity];
+		this.mask = capacity - 1;
+		this.executor = executor;
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		RingSubscription subscription;
+		synchronized (this) {
+			subscription = new RingSubscription(subscriber, Math.max(0, published - 1));
+		}
+		Object[] current;
+		Object[] next;
+		do {
+			current = subscriptions.get();
+			next = Arrays.copyOf(current, current.length + 1);
+			next[current.length] = subscription;
+		} while (!subscriptions.compareAndSet(current, next));
+		// still marked scheduled, so no other signal can overlap onSubscribe
+		subscriber.onSubscribe(subscription);
+		subscription.state.set(IDLE);
+		subscription.trySchedule();
+	}
+
+	/** Publishes <code>item</code> to every subscriber. */
+	public void submit(T item) {
+		long sequence;
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("Publisher is closed");
+			}
+			sequence = published;
+			ring[(int) (sequence & mask)] = item;
+			published = sequence + 1;
+		}
+		RingSubscription subscription;
+		while ((subscription = waiting.peek()) != null) {
+			// it parked after this item was published, so was everything queued
+			// behind it, and a subscription checks for new items itself after
+			// parking. Stopping here also keeps a subscription that runs on this
+			// thread and parks again from being woken over and over
+			if (subscription.parkedAt > sequence) {
+				break;
+			}
+			if (waiting.remove(subscription)) {
+				subscription.parked.set(false);
+				subscription.trySchedule();
+			}
+		}
+	}
+
+	/**
+	 * Completes every subscription once its subscriber has received the items
+	 * submitted so far.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		for (Object subscription : subscriptions.get()) {
+			((RingPublisher<?>.RingSubscription) subscription).trySchedule();
+		}
+	}
+
+	/**
+	 * Waits until every subscription has completed or was cancelled.
+	 *
+	 * @return false on timeout
+	 */
+	public boolean awaitCompletion(long timeout, TimeUnit unit) {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (subscriptions.get().length > 0) {
+			if (System.nanoTime() > deadline) {
+				return false;
+			}
+			LockSupport.parkNanos(100_000);
+		}
+		return true;
+	}
+
+	public int getSubscriberCount() {
+		return subscriptions.get().length;
+	}
+
+	public long getSubmittedCount() {
+		return published;
+	}
+
+	public long getDeliveredCount() {
+		return delivered.sum();
+	}
+
+	/** Items subscribers missed because they fell behind by the ring's capacity. */
+	public long getSkippedCount() {
+		return skipped.sum();
+	}
+}
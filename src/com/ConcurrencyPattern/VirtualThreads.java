@@ -0,0 +1,49 @@
+package com.ConcurrencyPattern;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Executors on virtual threads when the runtime has them (Java 21+). The
+ * sources still compile for older releases, so the factory method is looked up
+ * reflectively once and a caller supplied executor is used without it.
+ *
+ * @author nitin
+ *
+ */
+public final class VirtualThreads {
+
+	private static final Method PER_TASK_EXECUTOR = lookup();
+
+	private VirtualThreads() {
+	}
+
+	private static Method lookup() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	public static boolean available() {
+		return PER_TASK_EXECUTOR != null;
+	}
+
+	/**
+	 * A new virtual thread per task, or the executor of <code>fallback</code>
+	 * when the runtime has no virtual threads.
+	 */
+	public static ExecutorService newPerTaskExecutor(Supplier<? extends ExecutorService> fallback) {
+		if (PER_TASK_EXECUTOR != null) {
+			try {
+				return (ExecutorService) PER_TASK_EXECUTOR.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				// not expected for a public static method, use the fallback
+			}
+		}
+		return fallback.get();
+	}
+}
@@ -0,0 +1,14 @@
+package com.StructuralPattern;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Backend that can answer many keys in one round trip.
+ *
+ * @author nitin
+ *
+ */
+interface BatchLoader<K, V> {
+	Map<K, V> loadAll(Collection<K> keys) throws Exception;
+}
@@ -0,0 +1,185 @@
+package com.StructuralPattern;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces single-key calls arriving from many threads into bulk calls on a
+ * {@link BatchLoader}. A dispatcher thread waits for the first pending key,
+ * then keeps collecting until <code>maxBatchSize</code> keys are pending or
+ * <code>maxDelay</code> has passed, and sends them as one batch. Duplicate keys
+ * in a batch are loaded once.
+ *
+ * The batched method must take the key as its only argument. If it returns a
+ * {@link CompletableFuture} the caller gets its own future straight away,
+ * otherwise the proxy blocks until the batch holding its key completes. All
+ * other methods are forwarded to the target.
+ *
+ * @author nitin
+ *
+ */
+class BatchingInvocationHandler<K, V> implements InvocationHandler, AutoCloseable {
+
+	private static final class Request<K, V> {
+		private final K key;
+		private final CompletableFuture<V> result = new CompletableFuture<>();
+
+		Request(K key) {
+			this.key = key;
+		}
+	}
+
+	private final Object target;
+	private final Method batched;
+	private final BatchLoader<K, V> loader;
+	private final int maxBatchSize;
+	private final long maxDelayNanos;
+	private final LinkedBlockingQueue<Request<K, V>> pending = new LinkedBlockingQueue<>();
+	private final Thread dispatcher;
+	private volatile boolean running = true;
+
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+
+	public BatchingInvocationHandler(Object target, Method batched, BatchLoader<K, V> loader, int maxBatchSize,
+			long maxDelay, TimeUnit unit) {
+		if (batched.getParameterCount() != 1) {
+			throw new IllegalArgumentException("Batched method must take exactly one key: " + batched);
+		}
+		this.target = target;
+		this.batched = batched;
+		this.loader = loader;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+		this.dispatcher = new Thread(this::dispatch, "batch-dispatcher");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T newProxy(Class<T> iface) {
+		return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, this);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (!method.equals(batched)) {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+		if (!running) {
+			throw new IllegalStateException("Batching proxy is closed");
+		}
+		calls.increment();
+		Request<K, V> request = new Request<>((K) args[0]);
+		pending.add(request);
+		// close() may have drained the queue between the check above and the add
+		if (!running && pending.remove(request)) {
+			request.result.completeExceptionally(new IllegalStateException("Batching proxy is closed"));
+		}
+		if (CompletableFuture.class.isAssignableFrom(method.getReturnType())) {
+			return request.result;
+		}
+		try {
+			return request.result.join();
+		} catch (CompletionException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void dispatch() {
+		List<Request<K, V>> batch = new ArrayList<>(maxBatchSize);
+		while (running || !pending.isEmpty()) {
+			try {
+				Request<K, V> first = pending.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + maxDelayNanos;
+				while (batch.size() < maxBatchSize) {
+					// take whatever is already queued before waiting
+					if (pending.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+						continue;
+					}
+					long left = deadline - System.nanoTime();
+					if (left <= 0) {
+						break;
+					}
+					Request<K, V> next = pending.poll(left, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				load(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void load(List<Request<K, V>> batch) {
+		Map<K, List<Request<K, V>>> byKey = new LinkedHashMap<>();
+		for (Request<K, V> request : batch) {
+			byKey.computeIfAbsent(request.key, k -> new ArrayList<>(1)).add(request);
+		}
+		batches.increment();
+		try {
+			Map<K, V> values = loader.loadAll(byKey.keySet());
+			for (Map.Entry<K, List<Request<K, V>>> entry : byKey.entrySet()) {
+				V value = values.get(entry.getKey());
+				for (Request<K, V> request : entry.getValue()) {
+					request.result.complete(value);
+				}
+			}
+		} catch (Throwable e) {
+			// also errors, the dispatcher must survive for the batches after this one
+			for (Request<K, V> request : batch) {
+				request.result.completeExceptionally(e);
+			}
+		}
+	}
+
+	public long getCallCount() {
+		return calls.sum();
+	}
+
+	public long getBatchCount() {
+		return batches.sum();
+	}
+
+	/** Stops accepting calls; calls already queued are still dispatched. */
+	@Override
+	public void close() {
+		running = false;
+		try {
+			dispatcher.join();
+		} catch (InterruptedException e) {
+			// the remaining calls are failed below instead of waiting for the dispatcher
+			Thread.currentThread().interrupt();
+		}
+		// calls that raced with close() and missed the last batch
+		for (Request<K, V> request = pending.poll(); request != null; request = pending.poll()) {
+			request.result.completeExceptionally(new IllegalStateException("Batching proxy is closed"));
+		}
+	}
+}
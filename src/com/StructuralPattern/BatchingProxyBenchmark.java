@@ -0,0 +1,95 @@
+package com.StructuralPattern;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Many threads looking up single users against a backend with a fixed cost per
+ * round trip, once one call per lookup and once through
+ * {@link BatchingInvocationHandler}.
+ *
+ * @author nitin
+ *
+ */
+public class BatchingProxyBenchmark {
+
+	interface UserDirectory {
+		String get(Integer id);
+	}
+
+	// in-memory stand-in for a remote service behind a single connection, every
+	// round trip costs 1 ms no matter how many ids it carries
+	static class SlowUserBackend implements BatchLoader<Integer, String> {
+		private final LongAdder roundTrips = new LongAdder();
+
+		@Override
+		public synchronized Map<Integer, String> loadAll(Collection<Integer> ids) throws InterruptedException {
+			roundTrips.increment();
+			TimeUnit.MILLISECONDS.sleep(1);
+			Map<Integer, String> users = new HashMap<>();
+			for (Integer id : ids) {
+				users.put(id, "user-" + id);
+			}
+			return users;
+		}
+	}
+
+	static class DirectUserDirectory implements UserDirectory {
+		private final SlowUserBackend backend;
+
+		DirectUserDirectory(SlowUserBackend backend) {
+			this.backend = backend;
+		}
+
+		@Override
+		public String get(Integer id) {
+			try {
+				return backend.loadAll(java.util.Collections.singletonList(id)).get(id);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private static final int THREADS = 64;
+	private static final int LOOKUPS_PER_THREAD = 200;
+
+	public static void main(String[] args) throws Exception {
+		SlowUserBackend backend = new SlowUserBackend();
+		UserDirectory direct = new DirectUserDirectory(backend);
+
+		double directRate = run(direct);
+		long directTrips = backend.roundTrips.sumThenReset();
+
+		try (BatchingInvocationHandler<Integer, String> handler = new BatchingInvocationHandler<>(direct,
+				UserDirectory.class.getMethod("get", Integer.class), backend, 256, 200, TimeUnit.MICROSECONDS)) {
+			UserDirectory batching = handler.newProxy(UserDirectory.class);
+			double batchedRate = run(batching);
+			System.out.printf("direct:   %,10.0f lookups/s, %d round trips%n", directRate, directTrips);
+			System.out.printf("batching: %,10.0f lookups/s, %d round trips (%.1f keys per batch)%n", batchedRate,
+					backend.roundTrips.sum(), (double) handler.getCallCount() / handler.getBatchCount());
+		}
+	}
+
+	private static double run(UserDirectory directory) throws InterruptedException {
+		Thread[] threads = new Thread[THREADS];
+		long start = System.nanoTime();
+		for (int t = 0; t < THREADS; t++) {
+			int offset = t * LOOKUPS_PER_THREAD;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+					directory.get(offset + i);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return (double) THREADS * LOOKUPS_PER_THREAD * 1_000_000_000L / (System.nanoTime() - start);
+	}
+}
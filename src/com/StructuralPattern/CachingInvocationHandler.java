@@ -0,0 +1,262 @@
+package com.StructuralPattern;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memoizes the results of pure interface methods, keyed on method plus
+ * arguments.
+ * <ul>
+ * <li>the cache is bounded; when it is full a new entry only replaces the
+ * oldest one if its key has been asked for more often (TinyLFU admission), so
+ * one-off keys cannot flush out popular ones</li>
+ * <li>every cacheable method has its own time to live</li>
+ * <li>concurrent misses for the same key share one call to the target</li>
+ * <li>hit, miss, wait, eviction and rejection counters are exposed; a wait is
+ * a call that found the load of its key in flight</li>
+ * </ul>
+ *
+ * Methods not registered with {@link #cacheable(Method, long, TimeUnit)} are
+ * always forwarded. Exceptions are never cached.
+ *
+ * @author nitin
+ *
+ */
+class CachingInvocationHandler implements InvocationHandler {
+
+	static final class Key {
+		private final Method method;
+		private final Object[] args;
+		private final int hash;
+
+		Key(Method method, Object[] args) {
+			this.method = method;
+			this.args = args;
+			this.hash = 31 * method.hashCode() + Arrays.deepHashCode(args);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && method.equals(other.method) && Arrays.deepEquals(args, other.args);
+		}
+	}
+
+	static final class Entry {
+		private final Key key;
+		private final CompletableFuture<Object> value = new CompletableFuture<>();
+		private volatile long expiresAt;
+		// neighbours in admission order, guarded by the list head; null once the
+		// entry has expired, been evicted or been rejected
+		private Entry prev;
+		private Entry next;
+
+		Entry(Key key) {
+			this.key = key;
+		}
+	}
+
+	private final Object target;
+	private final int maximumSize;
+	private final Map<Method, Long> ttls = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Key, Entry> cache = new ConcurrentHashMap<>();
+	// circular list of the admitted entries, head.next is the oldest
+	private final Entry head = new Entry(null);
+	private volatile int size;
+	private final FrequencySketch sketch;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder waits = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+
+	public CachingInvocationHandler(Object target, int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("maximumSize must be positive");
+		}
+		this.target = target;
+		this.maximumSize = maximumSize;
+		this.sketch = new FrequencySketch(maximumSize);
+		head.prev = head;
+		head.next = head;
+	}
+
+	public CachingInvocationHandler cacheable(Method method, long ttl, TimeUnit unit) {
+		ttls.put(method, unit.toNanos(ttl));
+		return this;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T newProxy(Class<T> iface) {
+		return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, this);
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		Long ttl = ttls.get(method);
+		if (ttl == null) {
+			return call(method, args);
+		}
+		Key key = new Key(method, args == null ? new Object[0] : args);
+		sketch.increment(key.hash);
+
+		Entry entry = cache.get(key);
+		if (entry != null) {
+			if (!entry.value.isDone()) {
+				// single flight, another thread is already calling the target
+				waits.increment();
+				return await(entry);
+			}
+			if (entry.expiresAt - System.nanoTime() > 0) {
+				hits.increment();
+				return await(entry);
+			}
+			expire(entry);
+		}
+
+		Entry created = new Entry(key);
+		Entry loading = cache.putIfAbsent(key, created);
+		if (loading != null) {
+			waits.increment();
+			return await(loading);
+		}
+		misses.increment();
+		Object result;
+		try {
+			result = call(method, args);
+		} catch (Throwable e) {
+			cache.remove(key, created);
+			created.value.completeExceptionally(e);
+			throw e;
+		}
+		created.expiresAt = System.nanoTime() + ttl;
+		synchronized (head) {
+			link(created);
+			if (size > maximumSize) {
+				evict(created);
+			}
+		}
+		created.value.complete(result);
+		return result;
+	}
+
+	private Object call(Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static Object await(Entry entry) throws Throwable {
+		try {
+			return entry.value.join();
+		} catch (CompletionException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void expire(Entry entry) {
+		if (cache.remove(entry.key, entry)) {
+			synchronized (head) {
+				unlink(entry);
+			}
+		}
+	}
+
+	// the list methods below are called holding the head
+
+	private void link(Entry entry) {
+		entry.prev = head.prev;
+		entry.next = head;
+		head.prev.next = entry;
+		head.prev = entry;
+		size++;
+	}
+
+	private void unlink(Entry entry) {
+		if (entry.next != null) {
+			entry.prev.next = entry.next;
+			entry.next.prev = entry.prev;
+			entry.prev = null;
+			entry.next = null;
+			size--;
+		}
+	}
+
+	private void evict(Entry candidate) {
+		while (size > maximumSize) {
+			Entry victim = head.next;
+			if (victim == candidate) {
+				return;
+			}
+			if (sketch.frequency(candidate.key.hash) > sketch.frequency(victim.key.hash)) {
+				unlink(victim);
+				// not counted when it expired in the meantime
+				if (cache.remove(victim.key, victim)) {
+					evictions.increment();
+				}
+			} else {
+				// the newcomer is less popular than the oldest entry, keep the old one
+				unlink(victim);
+				link(victim);
+				unlink(candidate);
+				cache.remove(candidate.key, candidate);
+				rejections.increment();
+				return;
+			}
+		}
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getWaitCount() {
+		return waits.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public long getRejectionCount() {
+		return rejections.sum();
+	}
+
+	/** Entries admitted and neither expired, evicted nor rejected yet. */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		long hit = getHitCount();
+		long calls = hit + getMissCount() + getWaitCount();
+		return String.format("hits=%d misses=%d waits=%d hitRatio=%.3f evictions=%d rejections=%d size=%d", hit,
+				getMissCount(), getWaitCount(), calls == 0 ? 0.0 : (double) hit / calls, getEvictionCount(),
+				getRejectionCount(), size());
+	}
+}
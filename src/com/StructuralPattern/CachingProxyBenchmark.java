@@ -0,0 +1,113 @@
+package com.StructuralPattern;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a slow pure service with a Zipfian key distribution, once directly
+ * through a forwarding proxy and once through {@link CachingInvocationHandler}.
+ *
+ * @author nitin
+ *
+ */
+public class CachingProxyBenchmark {
+
+	interface PriceService {
+		long price(int sku);
+	}
+
+	// pretends to be a remote lookup, burns a few microseconds per call
+	static class SlowPriceService implements PriceService {
+		@Override
+		public long price(int sku) {
+			long h = sku;
+			for (int i = 0; i < 2_000; i++) {
+				h = h * 6364136223846793005L + 1442695040888963407L;
+			}
+			return h;
+		}
+	}
+
+	/** Keys 0..n-1 where key k is drawn with probability proportional to 1/(k+1)^s. */
+	static class ZipfGenerator {
+		private final double[] cdf;
+
+		ZipfGenerator(int n, double s) {
+			cdf = new double[n];
+			double sum = 0;
+			for (int k = 0; k < n; k++) {
+				sum += 1.0 / Math.pow(k + 1, s);
+				cdf[k] = sum;
+			}
+			for (int k = 0; k < n; k++) {
+				cdf[k] /= sum;
+			}
+		}
+
+		int next() {
+			int index = Arrays.binarySearch(cdf, ThreadLocalRandom.current().nextDouble());
+			return index >= 0 ? index : Math.min(-index - 1, cdf.length - 1);
+		}
+	}
+
+	private static final int THREADS = 4;
+	private static final int CALLS_PER_THREAD = 500_000;
+
+	public static void main(String[] args) throws Exception {
+		ZipfGenerator zipf = new ZipfGenerator(100_000, 0.99);
+		PriceService service = new SlowPriceService();
+
+		PriceService uncached = ReflectiveInvocationHandler.newProxy(PriceService.class, service);
+		CachingInvocationHandler handler = new CachingInvocationHandler(service, 2_000)
+				.cacheable(PriceService.class.getMethod("price", int.class), 10, TimeUnit.SECONDS);
+		PriceService cached = handler.newProxy(PriceService.class);
+
+		for (int round = 1; round <= 3; round++) {
+			System.out.printf("round %d: uncached %,.0f calls/s, cached %,.0f calls/s%n", round, run(uncached, zipf),
+					run(cached, zipf));
+		}
+		System.out.println(handler);
+		expireRepeatedly(service);
+	}
+
+	// a working set that fits the cache, reloaded again and again as it expires;
+	// the admission list must shrink with every expired entry
+	private static void expireRepeatedly(PriceService service) throws Exception {
+		int keys = 500;
+		CachingInvocationHandler handler = new CachingInvocationHandler(service, 2 * keys)
+				.cacheable(PriceService.class.getMethod("price", int.class), 1, TimeUnit.MILLISECONDS);
+		PriceService cached = handler.newProxy(PriceService.class);
+		long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+		while (System.nanoTime() - end < 0) {
+			for (int sku = 0; sku < keys; sku++) {
+				cached.price(sku);
+			}
+		}
+		if (handler.size() > keys) {
+			throw new IllegalStateException("Expired entries are still queued: " + handler);
+		}
+		System.out.println("ttl churn: " + handler);
+	}
+
+	private static double run(PriceService service, ZipfGenerator zipf) throws InterruptedException {
+		Thread[] threads = new Thread[THREADS];
+		long start = System.nanoTime();
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread(() -> {
+				long sink = 0;
+				for (int i = 0; i < CALLS_PER_THREAD; i++) {
+					sink += service.price(zipf.next());
+				}
+				if (sink == 42) {
+					System.out.println();
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return (double) THREADS * CALLS_PER_THREAD * 1_000_000_000L / (System.nanoTime() - start);
+	}
+}
@@ -91,6 +91,17 @@ public class DynamicProxyTest {
 
 		csProxyInstance.length();
 
+		// same timing proxy with methods resolved once into MethodHandles
+		@SuppressWarnings("unchecked")
+		Map<String, String> handleProxyInstance = TimingMethodHandleInvocationHandler.newProxy(Map.class,
+				new HashMap<>());
+		handleProxyInstance.put("hello", "world");
+		handleProxyInstance.remove("hello", "world");
+
+		for (LatencySnapshot snapshot : LatencyRecorder.DEFAULT.snapshot().values()) {
+			System.out.println(snapshot);
+		}
+
 		// Lambda expression
 		proxyInstance = (Map) Proxy.newProxyInstance(DynamicProxyTest.class.getClassLoader(), new Class[] { Map.class },
 				(proxy, method, methodArgs) -> {
@@ -106,28 +117,32 @@ public class DynamicProxyTest {
 
 class TimingDynamicInvocationHandler implements InvocationHandler {
 
-	private static Logger LOGGER = LoggerFactory.getLogger(TimingDynamicInvocationHandler.class);
-
-	private final Map<String, Method> methods = new HashMap<>();
+	private final LatencyRecorder recorder;
 
 	private Object target;
 
 	public TimingDynamicInvocationHandler(Object target) {
-		this.target = target;
+		this(target, LatencyRecorder.DEFAULT);
+	}
 
-		for (Method method : target.getClass().getDeclaredMethods()) {
-			this.methods.put(method.getName(), method);
-		}
+	public TimingDynamicInvocationHandler(Object target, LatencyRecorder recorder) {
+		this.target = target;
+		this.recorder = recorder;
 	}
 
 	@Override
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
 		long start = System.nanoTime();
-		Object result = methods.get(method.getName()).invoke(target, args);
-		long elapsed = System.nanoTime() - start;
-
-		LOGGER.info("Executing {} finished in {} ns", method.getName(), elapsed);
-
-		return result;
+		// invoke the interface method itself, a lookup by name would pick the wrong
+		// overload, e.g. Map.remove(Object) for Map.remove(Object, Object)
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		} finally {
+			// logging every call costs more than most timed methods, see
+			// LatencyRecorder.snapshot() and startReporter()
+			recorder.record(method, System.nanoTime() - start);
+		}
 	}
 }
\ No newline at end of file
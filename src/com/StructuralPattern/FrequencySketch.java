@@ -0,0 +1,64 @@
+package com.StructuralPattern;
+
+/**
+ * Approximate access counts of recently used keys (count-min sketch with four
+ * rows of 4 bit saturating counters). All counters are halved once enough
+ * increments have been seen, so old popularity fades out.
+ *
+ * Updates are deliberately racy: a lost increment only makes an estimate a
+ * little lower.
+ *
+ * @author nitin
+ *
+ */
+class FrequencySketch {
+
+	private static final int[] SEEDS = { 0x97cb3127, 0xb53f1a5d, 0x6c2d8f43, 0x2f0e9b71 };
+	private static final int MAX_COUNT = 15;
+
+	private final int[] table;
+	private final int mask;
+	private final int sampleSize;
+	private int additions;
+
+	FrequencySketch(int maximumSize) {
+		int width = Integer.highestOneBit(Math.max(16, maximumSize * 4) - 1) << 1;
+		this.table = new int[width];
+		this.mask = width - 1;
+		this.sampleSize = 10 * Math.max(16, maximumSize);
+	}
+
+	private int index(int hash, int row) {
+		int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	void increment(int hash) {
+		boolean added = false;
+		for (int row = 0; row < SEEDS.length; row++) {
+			int i = index(hash, row);
+			if (table[i] < MAX_COUNT) {
+				table[i]++;
+				added = true;
+			}
+		}
+		if (added && ++additions >= sampleSize) {
+			reset();
+		}
+	}
+
+	int frequency(int hash) {
+		int frequency = MAX_COUNT;
+		for (int row = 0; row < SEEDS.length; row++) {
+			frequency = Math.min(frequency, table[index(hash, row)]);
+		}
+		return frequency;
+	}
+
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] >>>= 1;
+		}
+		additions = 0;
+	}
+}
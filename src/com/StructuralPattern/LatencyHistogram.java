@@ -0,0 +1,62 @@
+package com.StructuralPattern;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram. Every power of two is split into 16 linear
+ * sub-buckets, so a recorded value is off by at most 1/16 (about 6%) while
+ * nanosecond to minute latencies fit in a few hundred counters.
+ *
+ * Counters are atomic, so a histogram can be shared by a few threads, and
+ * readers merge the histograms of all threads while they are written.
+ *
+ * @author nitin
+ *
+ */
+class LatencyHistogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	// values above 2^40 ns (about 18 minutes) go into the last bucket
+	private static final int MAX_EXPONENT = 40;
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+	// the last slot holds the maximum
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return value < 0 ? 0 : (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	// highest value that falls into the bucket
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+
+	void record(long value) {
+		counts.getAndIncrement(bucket(value));
+		long max;
+		while (value > (max = counts.get(BUCKETS)) && !counts.compareAndSet(BUCKETS, max, value)) {
+		}
+	}
+
+	void addTo(long[] merged) {
+		for (int i = 0; i < BUCKETS; i++) {
+			merged[i] += counts.get(i);
+		}
+		merged[BUCKETS] = Math.max(merged[BUCKETS], counts.get(BUCKETS));
+	}
+}
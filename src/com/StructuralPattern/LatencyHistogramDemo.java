@@ -0,0 +1,47 @@
+package com.StructuralPattern;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hammers a timing proxy from several threads and prints the merged
+ * percentiles.
+ *
+ * @author nitin
+ *
+ */
+public class LatencyHistogramDemo {
+
+	public static void main(String[] args) throws InterruptedException {
+		LatencyRecorder recorder = new LatencyRecorder();
+		ScheduledExecutorService reporter = recorder.startReporter(1, TimeUnit.SECONDS);
+
+		Map<Integer, Integer> target = new ConcurrentHashMap<>();
+		@SuppressWarnings("unchecked")
+		Map<Integer, Integer> map = TimingMethodHandleInvocationHandler.newProxy(Map.class, target, recorder);
+
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 2_000_000; i++) {
+					map.put(i & 4095, i);
+					map.get(i & 4095);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		reporter.shutdown();
+
+		for (LatencySnapshot snapshot : recorder.snapshot().values()) {
+			System.out.println(snapshot);
+		}
+	}
+}
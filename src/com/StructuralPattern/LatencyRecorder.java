@@ -0,0 +1,122 @@
+package com.StructuralPattern;
+
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-method latency histograms for the timing proxies. Every method has a
+ * fixed set of histograms, a power of two at least twice the number of
+ * cores, and a thread records into the one its id hashes to. Threads rarely
+ * share a histogram, so recording is a few uncontended atomic increments,
+ * and the memory used does not grow with the number of threads, however many
+ * pooled or virtual threads come and go. Snapshots merge the stripes on
+ * demand, and an optional reporter logs them periodically instead of logging
+ * every call.
+ *
+ * Methods are named by their fully qualified signature, so methods of
+ * different types with the same simple name are kept apart.
+ *
+ * @author nitin
+ *
+ */
+class LatencyRecorder {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(LatencyRecorder.class);
+
+	/** Shared by timing proxies that are not given a recorder of their own. */
+	static final LatencyRecorder DEFAULT = new LatencyRecorder();
+
+	private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1);
+
+	static class MethodLatency {
+		private final String name;
+		private final LatencyHistogram[] histograms = new LatencyHistogram[STRIPES];
+
+		MethodLatency(String name) {
+			this.name = name;
+			for (int i = 0; i < STRIPES; i++) {
+				histograms[i] = new LatencyHistogram();
+			}
+		}
+
+		void record(long nanos) {
+			long id = Thread.currentThread().getId();
+			// spread consecutive ids of pooled threads over the stripes
+			int stripe = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (STRIPES - 1);
+			histograms[stripe].record(nanos);
+		}
+
+		LatencySnapshot snapshot() {
+			long[] merged = new long[LatencyHistogram.BUCKETS + 1];
+			for (LatencyHistogram histogram : histograms) {
+				histogram.addTo(merged);
+			}
+			return new LatencySnapshot(name, merged);
+		}
+	}
+
+	private final ConcurrentHashMap<String, MethodLatency> byName = new ConcurrentHashMap<>();
+
+	// Method instances handed out by proxy classes are stable, look them up by
+	// identity and fall back to the signature on first use
+	private volatile IdentityHashMap<Method, MethodLatency> byMethod = new IdentityHashMap<>();
+
+	void record(Method method, long nanos) {
+		MethodLatency latency = byMethod.get(method);
+		if (latency == null) {
+			latency = register(method);
+		}
+		latency.record(nanos);
+	}
+
+	private synchronized MethodLatency register(Method method) {
+		StringBuilder name = new StringBuilder(method.getDeclaringClass().getTypeName()).append('.')
+				.append(method.getName()).append('(');
+		Class<?>[] parameters = method.getParameterTypes();
+		for (int i = 0; i < parameters.length; i++) {
+			name.append(i == 0 ? "" : ", ").append(parameters[i].getTypeName());
+		}
+		String signature = name.append(')').toString();
+		MethodLatency latency = byName.computeIfAbsent(signature, MethodLatency::new);
+		IdentityHashMap<Method, MethodLatency> copy = new IdentityHashMap<>(byMethod);
+		copy.put(method, latency);
+		byMethod = copy;
+		return latency;
+	}
+
+	/** @return the latencies recorded so far, by method signature */
+	public Map<String, LatencySnapshot> snapshot() {
+		Map<String, LatencySnapshot> snapshots = new TreeMap<>();
+		for (MethodLatency latency : byName.values()) {
+			snapshots.put(latency.name, latency.snapshot());
+		}
+		return snapshots;
+	}
+
+	/**
+	 * Logs a snapshot of every method at a fixed rate from a daemon thread.
+	 * Shut the returned executor down to stop reporting.
+	 */
+	public ScheduledExecutorService startReporter(long period, TimeUnit unit) {
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "latency-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleAtFixedRate(() -> {
+			for (LatencySnapshot snapshot : snapshot().values()) {
+				LOGGER.info("{}", snapshot);
+			}
+		}, period, period, unit);
+		return reporter;
+	}
+}
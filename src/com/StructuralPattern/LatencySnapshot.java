@@ -0,0 +1,74 @@
+package com.StructuralPattern;
+
+/**
+ * Point in time view of the latencies of one method, in nanoseconds.
+ *
+ * @author nitin
+ *
+ */
+class LatencySnapshot {
+	private final String name;
+	private final long count;
+	private final long p50;
+	private final long p99;
+	private final long p999;
+	private final long max;
+
+	LatencySnapshot(String name, long[] merged) {
+		this.name = name;
+		long total = 0;
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			total += merged[i];
+		}
+		this.count = total;
+		this.max = merged[LatencyHistogram.BUCKETS];
+		this.p50 = percentile(merged, total, 0.50);
+		this.p99 = percentile(merged, total, 0.99);
+		this.p999 = percentile(merged, total, 0.999);
+	}
+
+	private long percentile(long[] merged, long total, double quantile) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * quantile);
+		long seen = 0;
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			seen += merged[i];
+			if (seen >= rank) {
+				return Math.min(LatencyHistogram.upperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getP50() {
+		return p50;
+	}
+
+	public long getP99() {
+		return p99;
+	}
+
+	public long getP999() {
+		return p999;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return name + " count=" + count + " p50=" + p50 + "ns p99=" + p99 + "ns p999=" + p999 + "ns max=" + max
+				+ "ns";
+	}
+}
@@ -0,0 +1,174 @@
+package com.StructuralPattern;
+
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Forwarding {@link InvocationHandler} that resolves every method of the proxied
+ * interfaces once, by full signature. Overloads such as
+ * <code>Map.remove(Object)</code> and <code>Map.remove(Object, Object)</code>
+ * get their own invoker, and a call is a map lookup plus a plain interface call
+ * instead of <code>Method.invoke</code>.
+ *
+ * Methods with up to three parameters are bound through
+ * {@link LambdaMetafactory}, which spins a small hidden class calling the
+ * interface method directly, so the JIT can inline it like hand written code.
+ * Other methods, and interfaces this class has no access to, fall back to a
+ * {@link MethodHandle} spreading the argument array.
+ *
+ * Exceptions thrown by the target reach the caller unwrapped, exactly as with a
+ * direct call.
+ *
+ * @author nitin
+ *
+ */
+class MethodHandleInvocationHandler implements InvocationHandler {
+
+	private static final Object[] NO_ARGS = new Object[0];
+	interface Invoker {
+		Object invoke(Object target, Object[] args) throws Throwable;
+	}
+
+	interface Call0 {
+		Object call(Object target) throws Throwable;
+	}
+
+	interface Call1 {
+		Object call(Object target, Object a0) throws Throwable;
+	}
+
+	interface Call2 {
+		Object call(Object target, Object a0, Object a1) throws Throwable;
+	}
+
+	interface Call3 {
+		Object call(Object target, Object a0, Object a1, Object a2) throws Throwable;
+	}
+
+	private static final Class<?>[] CALLS = { Call0.class, Call1.class, Call2.class, Call3.class };
+
+	protected final Object target;
+
+	// resolved by signature, Method.equals() compares names and parameter types
+	private final Map<Method, Invoker> invokers;
+
+	// the proxy class always hands the same Method instances to invoke(), so
+	// after the first call they are found by identity, copied on write
+	private volatile IdentityHashMap<Method, Invoker> seen = new IdentityHashMap<>();
+
+	public MethodHandleInvocationHandler(Object target, Class<?>... interfaces) {
+		this.target = target;
+		Map<Method, Invoker> resolved = new HashMap<>();
+		try {
+			for (Class<?> type : interfaces) {
+				for (Method method : type.getMethods()) {
+					// static interface methods such as Map.of never reach a proxy
+					if (!Modifier.isStatic(method.getModifiers())) {
+						resolved.put(method, resolve(method));
+					}
+				}
+			}
+			for (String name : new String[] { "hashCode", "toString" }) {
+				Method method = Object.class.getMethod(name);
+				resolved.put(method, resolve(method));
+			}
+			Method equals = Object.class.getMethod("equals", Object.class);
+			resolved.put(equals, resolve(equals));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Cannot proxy " + target.getClass().getName(), e);
+		}
+		this.invokers = Collections.unmodifiableMap(resolved);
+	}
+
+	private static Invoker resolve(Method method) throws IllegalAccessException {
+		int arity = method.getParameterCount();
+		// a void method cannot be adapted to return Object by LambdaMetafactory
+		if (arity < CALLS.length && method.getReturnType() != void.class) {
+			try {
+				return spin(method, arity);
+			} catch (ReflectiveOperationException | LambdaConversionException e) {
+				// not accessible from this package, use the method handle below
+			}
+		}
+		// unreflecting the interface method keeps virtual dispatch on the target,
+		// so non-public implementation classes work as well
+		MethodHandle handle = MethodHandles.publicLookup().unreflect(method);
+		MethodHandle spread = handle.asSpreader(Object[].class, arity)
+				.asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+		return (target, args) -> (Object) spread.invokeExact(target, args);
+	}
+
+	private static Invoker spin(Method method, int arity)
+			throws ReflectiveOperationException, LambdaConversionException {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodHandle implementation = lookup.unreflect(method);
+		Class<?> call = CALLS[arity];
+		MethodType erased = lookup.findVirtual(call, "call", MethodType.genericMethodType(arity + 1)).type()
+				.dropParameterTypes(0, 1);
+		// same shape as the implementation with primitives boxed, LambdaMetafactory
+		// inserts the casts and (un)boxing
+		MethodType instantiated = implementation.type().wrap().changeReturnType(Object.class);
+		MethodHandle factory = LambdaMetafactory.metafactory(lookup, "call", MethodType.methodType(call), erased,
+				implementation, instantiated).getTarget();
+		Object function;
+		try {
+			function = factory.invoke();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			// the factory takes no arguments and declares nothing
+			throw new IllegalStateException("Cannot bind " + method, e);
+		}
+		switch (arity) {
+		case 0:
+			Call0 c0 = (Call0) function;
+			return (target, args) -> c0.call(target);
+		case 1:
+			Call1 c1 = (Call1) function;
+			return (target, args) -> c1.call(target, args[0]);
+		case 2:
+			Call2 c2 = (Call2) function;
+			return (target, args) -> c2.call(target, args[0], args[1]);
+		default:
+			Call3 c3 = (Call3) function;
+			return (target, args) -> c3.call(target, args[0], args[1], args[2]);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> T newProxy(Class<T> iface, T target) {
+		return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface },
+				new MethodHandleInvocationHandler(target, iface));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		Invoker invoker = seen.get(method);
+		if (invoker == null) {
+			invoker = remember(method);
+		}
+		return invoker.invoke(target, args == null ? NO_ARGS : args);
+	}
+
+	private synchronized Invoker remember(Method method) {
+		Invoker invoker = invokers.get(method);
+		if (invoker == null) {
+			throw new UnsupportedOperationException("Not proxied: " + method);
+		}
+		IdentityHashMap<Method, Invoker> copy = new IdentityHashMap<>(seen);
+		copy.put(method, invoker);
+		seen = copy;
+		return invoker;
+	}
+}
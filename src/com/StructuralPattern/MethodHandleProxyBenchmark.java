@@ -0,0 +1,65 @@
+package com.StructuralPattern;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares a direct call, a <code>Method.invoke</code> proxy and a
+ * {@link MethodHandleInvocationHandler} proxy on <code>Map</code> and
+ * <code>CharSequence</code>.
+ *
+ * @author nitin
+ *
+ */
+public class MethodHandleProxyBenchmark {
+
+	private static final int CALLS = 10_000_000;
+	private static final int ROUNDS = 5;
+
+	interface Call<T> {
+		int run(T target, int i);
+	}
+
+	public static void main(String[] args) {
+		Map<Integer, Integer> map = new HashMap<>();
+		for (int i = 0; i < 1024; i++) {
+			map.put(i, i);
+		}
+		@SuppressWarnings("unchecked")
+		Map<Integer, Integer> reflectiveMap = ReflectiveInvocationHandler.newProxy(Map.class, map);
+		@SuppressWarnings("unchecked")
+		Map<Integer, Integer> handleMap = MethodHandleInvocationHandler.newProxy(Map.class, map);
+
+		// overloads resolve to the right method
+		handleMap.put(-1, -1);
+		System.out.println("remove(-1, 0) = " + handleMap.remove(-1, 0) + ", remove(-1) = " + handleMap.remove(-1));
+
+		CharSequence text = "Hello World";
+		CharSequence reflectiveText = ReflectiveInvocationHandler.newProxy(CharSequence.class, text);
+		CharSequence handleText = MethodHandleInvocationHandler.newProxy(CharSequence.class, text);
+
+		Call<Map<Integer, Integer>> mapGet = (m, i) -> m.get(i & 1023);
+		Call<CharSequence> charAt = (cs, i) -> cs.charAt(i % 11) + cs.length();
+
+		for (int round = 1; round <= ROUNDS; round++) {
+			System.out.printf("round %d Map.get:       direct %5.1f ns, reflective %5.1f ns, method handle %5.1f ns%n",
+					round, measure(map, mapGet), measure(reflectiveMap, mapGet), measure(handleMap, mapGet));
+			System.out.printf("round %d CharSequence:  direct %5.1f ns, reflective %5.1f ns, method handle %5.1f ns%n",
+					round, measure(text, charAt), measure(reflectiveText, charAt), measure(handleText, charAt));
+		}
+	}
+
+	private static <T> double measure(T target, Call<T> call) {
+		long sink = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < CALLS; i++) {
+			sink += call.run(target, i);
+		}
+		long elapsed = System.nanoTime() - start;
+		if (sink == 42) {
+			System.out.println();
+		}
+		return (double) elapsed / CALLS;
+	}
+}
@@ -0,0 +1,36 @@
+package com.StructuralPattern;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Plain forwarding handler based on <code>Method.invoke</code>, the baseline
+ * for {@link MethodHandleProxyBenchmark}.
+ *
+ * @author nitin
+ *
+ */
+class ReflectiveInvocationHandler implements InvocationHandler {
+
+	private final Object target;
+
+	public ReflectiveInvocationHandler(Object target) {
+		this.target = target;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> T newProxy(Class<T> iface, T target) {
+		return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface },
+				new ReflectiveInvocationHandler(target));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (java.lang.reflect.InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
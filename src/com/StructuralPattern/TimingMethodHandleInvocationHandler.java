@@ -0,0 +1,41 @@
+package com.StructuralPattern;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * {@link TimingDynamicInvocationHandler} on top of cached method handles.
+ * Latencies go into a {@link LatencyRecorder} instead of one log line per call.
+ *
+ * @author nitin
+ *
+ */
+class TimingMethodHandleInvocationHandler extends MethodHandleInvocationHandler {
+
+	private final LatencyRecorder recorder;
+
+	public TimingMethodHandleInvocationHandler(Object target, LatencyRecorder recorder, Class<?>... interfaces) {
+		super(target, interfaces);
+		this.recorder = recorder;
+	}
+
+	public static <T> T newProxy(Class<T> iface, T target) {
+		return newProxy(iface, target, LatencyRecorder.DEFAULT);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> T newProxy(Class<T> iface, T target, LatencyRecorder recorder) {
+		return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface },
+				new TimingMethodHandleInvocationHandler(target, recorder, iface));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		long start = System.nanoTime();
+		try {
+			return super.invoke(proxy, method, args);
+		} finally {
+			recorder.record(method, System.nanoTime() - start);
+		}
+	}
+}